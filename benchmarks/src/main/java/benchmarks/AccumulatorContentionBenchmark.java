@@ -0,0 +1,146 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tools.StripedAccumulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * nThreads tasks add UPDATES doubles each to one shared sum, with work
+ * tokens of {@link Blackhole#consumeCPU} between two updates: a lock, a
+ * CAS loop on the bits of the double in an AtomicLong, a DoubleAdder, a
+ * {@link StripedAccumulator} with a cell per thread or per task, and
+ * per-task partial sums returned by futures, as in Lecture2_1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class AccumulatorContentionBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int nThreads;
+
+    @Param({"0", "50"})
+    public int work;
+
+    private static final int UPDATES = 100_000;
+
+    @FunctionalInterface
+    private interface Update {
+        void add(int task, double value);
+    }
+
+    private ExecutorService executorService;
+
+    private final Object lock = new Object();
+    private double lockedSum;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executorService = Executors.newFixedThreadPool(nThreads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    private void runTasks(final Update update) {
+        final List<Callable<Void>> tasks = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            final int task = i;
+            tasks.add(() -> {
+                for (int j = 0; j < UPDATES; j++) {
+                    Blackhole.consumeCPU(work);
+                    update.add(task, j);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executorService.invokeAll(tasks)) future.get();
+        } catch (ExecutionException | InterruptedException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    @Benchmark
+    public double synchronizedSum() {
+        lockedSum = 0;
+        runTasks((task, value) -> {
+            synchronized (lock) {
+                lockedSum += value;
+            }
+        });
+        synchronized (lock) {
+            return lockedSum;
+        }
+    }
+
+    @Benchmark
+    public double atomicLongCas() {
+        final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+        runTasks((task, value) -> {
+            long expected = bits.get();
+            while (!bits.compareAndSet(
+                expected, Double.doubleToRawLongBits(Double.longBitsToDouble(expected) + value)
+            )) expected = bits.get();
+        });
+        return Double.longBitsToDouble(bits.get());
+    }
+
+    @Benchmark
+    public double doubleAdder() {
+        final DoubleAdder adder = new DoubleAdder();
+        runTasks((task, value) -> adder.add(value));
+        return adder.sum();
+    }
+
+    @Benchmark
+    public double stripedPerThread() {
+        final StripedAccumulator.OfDouble accumulator = new StripedAccumulator.OfDouble();
+        runTasks((task, value) -> accumulator.add(value));
+        return accumulator.sum();
+    }
+
+    @Benchmark
+    public double stripedPerTask() {
+        final StripedAccumulator.OfDouble accumulator = new StripedAccumulator.OfDouble(nThreads);
+        runTasks(accumulator::add);
+        return accumulator.sum();
+    }
+
+    @Benchmark
+    public double perTaskFutures() {
+        final List<Callable<Double>> tasks = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++)
+            tasks.add(() -> {
+                double sum = 0;
+                for (int j = 0; j < UPDATES; j++) {
+                    Blackhole.consumeCPU(work);
+                    sum += j;
+                }
+                return sum;
+            });
+        double output = 0;
+        try {
+            for (Future<Double> future : executorService.invokeAll(tasks)) output += future.get();
+        } catch (ExecutionException | InterruptedException exc) {
+            throw new RuntimeException(exc);
+        }
+        return output;
+    }
+}
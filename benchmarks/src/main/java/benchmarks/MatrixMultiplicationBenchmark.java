@@ -0,0 +1,87 @@
+package benchmarks;
+
+import lectures.Lecture3_2A;
+import lectures.Lecture3_2B;
+import org.openjdk.jmh.annotations.*;
+
+import tools.DenseMatrix;
+import tools.RecursiveMatrixMultiplication;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static tools.MatrixTools.blockedProductOf;
+import static tools.MatrixTools.createRangeSquareMatrix;
+import static tools.MatrixTools.productOf;
+import static tools.MatrixTools.recursiveProductOf;
+
+/**
+ * Matrix multiplication of {@link Lecture3_2A} (nested parallel streams)
+ * and {@link Lecture3_2B} (one fork join task per cell) against
+ * {@link tools.MatrixTools#productOf}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MatrixMultiplicationBenchmark {
+
+    @Param({"50", "100", "200", "400", "800", "2000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int nThreads;
+
+    private double[][] inputs;
+
+    private DenseMatrix denseInputs;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        inputs = createRangeSquareMatrix(size);
+        denseInputs = DenseMatrix.of(inputs);
+        forkJoinPool = new ForkJoinPool(nThreads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Benchmark
+    public double[][] sequential() {
+        return productOf(inputs, inputs);
+    }
+
+    @Benchmark
+    public DenseMatrix blocked() {
+        return blockedProductOf(denseInputs, denseInputs);
+    }
+
+    @Benchmark
+    public DenseMatrix recursive() {
+        return recursiveProductOf(forkJoinPool, denseInputs, denseInputs);
+    }
+
+    @Benchmark
+    public DenseMatrix recursiveStrassen() {
+        return recursiveProductOf(
+            forkJoinPool, denseInputs, denseInputs,
+            RecursiveMatrixMultiplication.DEFAULT_LEAF_SIZE, 512
+        );
+    }
+
+    @Benchmark
+    public double[][] parallelStreams() {
+        return forkJoinPool.submit(() -> Lecture3_2A.parallelProductOf(inputs, inputs)).join();
+    }
+
+    @Benchmark
+    public double[][] taskPerCell() {
+        return Lecture3_2B.parallelProductOf(forkJoinPool, inputs, inputs);
+    }
+}
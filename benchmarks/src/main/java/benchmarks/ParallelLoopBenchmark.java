@@ -0,0 +1,78 @@
+package benchmarks;
+
+import cases.WithCompletableFutures;
+import org.openjdk.jmh.annotations.*;
+import tools.ComputeRuntime;
+import tools.ParallelFor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static tools.EvaluationTools.createRangeArray;
+
+/**
+ * {@link WithCompletableFutures#parallelLoop} raising every element of a
+ * range array to the power of pi, against the same loop as a
+ * {@link tools.TaskGraph} and on {@link ParallelFor} with a per-index and a
+ * per-range body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class ParallelLoopBenchmark {
+
+    @Param({"10000", "1000000", "10000000", "200000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int nChunks;
+
+    @Param({"1", "2", "4", "8"})
+    public int nThreads;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        forkJoinPool = ComputeRuntime.shared(nThreads).forkJoinPool();
+    }
+
+    @Benchmark
+    public double[] sequential() {
+        return WithCompletableFutures.sequentialPow(size, Math.PI);
+    }
+
+    @Benchmark
+    public double[] parallelLoop() {
+        return WithCompletableFutures.parallelPow(forkJoinPool, size, nChunks, Math.PI);
+    }
+
+    @Benchmark
+    public double[] taskGraph() {
+        return WithCompletableFutures.graphPow(forkJoinPool, createRangeArray(size), nChunks, Math.PI);
+    }
+
+    @Benchmark
+    public double[] parallelForEach() {
+        final double[] toBeRaised = createRangeArray(size);
+        ParallelFor.forEach(forkJoinPool, size, nChunks, i -> toBeRaised[i] = Math.pow(toBeRaised[i], Math.PI));
+        return toBeRaised;
+    }
+
+    @Benchmark
+    public double[] parallelForRange() {
+        final double[] toBeRaised = createRangeArray(size);
+        ParallelFor.forRange(forkJoinPool, size, nChunks, (start, end) -> {
+            for (int i = start; i < end; i++) toBeRaised[i] = Math.pow(toBeRaised[i], Math.PI);
+        });
+        return toBeRaised;
+    }
+
+    @Benchmark
+    public double[] parallelForSimd() {
+        return WithCompletableFutures.parallelVectorPow(forkJoinPool, size, nChunks, Math.PI);
+    }
+}
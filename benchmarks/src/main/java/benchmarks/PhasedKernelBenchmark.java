@@ -0,0 +1,63 @@
+package benchmarks;
+
+import lectures.Lecture4_1;
+import org.openjdk.jmh.annotations.*;
+import tools.PhasedExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two phase kernel of {@link Lecture4_1}: fill, barrier, then twenty
+ * repeated squares per element. {@link Lecture4_1#inPhases} spawns a chain
+ * of futures per run, {@link PhasedExecutor} reuses its workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PhasedKernelBenchmark {
+
+    @Param({"10000", "1000000", "10000000", "250000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int nTasks;
+
+    private PhasedExecutor phasedExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        phasedExecutor = new PhasedExecutor(nTasks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        phasedExecutor.close();
+    }
+
+    @Benchmark
+    public double[] sequential() {
+        return Lecture4_1.sequentialKernel(size);
+    }
+
+    @Benchmark
+    public double[] inPhases() {
+        return Lecture4_1.parallelKernel(size, nTasks);
+    }
+
+    @Benchmark
+    public double[] phasedExecutor() {
+        final double[] output = new double[size];
+        Lecture4_1.parallelKernel(phasedExecutor, output);
+        return output;
+    }
+
+    @Benchmark
+    public double[] phasedExecutorSimd() {
+        final double[] output = new double[size];
+        Lecture4_1.parallelVectorKernel(phasedExecutor, output);
+        return output;
+    }
+}
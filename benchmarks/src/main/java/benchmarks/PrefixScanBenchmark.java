@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import tools.ComputeRuntime;
+import tools.ParallelScan;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static tools.EvaluationTools.createRangeArray;
+
+/**
+ * Inclusive prefix sums of a range array with {@link ParallelScan} against
+ * a plain loop and {@link Arrays#parallelPrefix}. Every variant writes a
+ * separate output array; parallelPrefix works in place, so it first copies
+ * the inputs into the outputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PrefixScanBenchmark {
+
+    @Param({"10000", "1000000", "100000000"})
+    public int size;
+
+    @Param({"4", "16", "64"})
+    public int nChunks;
+
+    private ForkJoinPool forkJoinPool;
+    private double[] inputs;
+    private double[] outputs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        forkJoinPool = ComputeRuntime.shared().forkJoinPool();
+        inputs = createRangeArray(size);
+        outputs = new double[size];
+    }
+
+    @Benchmark
+    public double[] sequentialLoop() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += inputs[i];
+            outputs[i] = sum;
+        }
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] sequentialScan() {
+        ParallelScan.sequentialInclusiveScan(inputs, outputs, Double::sum);
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] arraysParallelPrefix() {
+        System.arraycopy(inputs, 0, outputs, 0, size);
+        Arrays.parallelPrefix(outputs, Double::sum);
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] parallelScan() {
+        ParallelScan.inclusiveScan(forkJoinPool, inputs, outputs, nChunks, Double::sum);
+        return outputs;
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import lectures.Lecture2_3;
+import org.openjdk.jmh.annotations.*;
+import tools.PrimeSieve;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prime reciprocal streams of {@link Lecture2_3}. Parallel streams run on
+ * the pool that invokes them, so the thread count is controlled by
+ * submitting the stream to a dedicated {@link ForkJoinPool}. The trial
+ * division streams are compared with the segmented {@link PrimeSieve}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PrimeReciprocalSumBenchmark {
+
+    @Param({"10000", "100000", "1000000", "2560000", "100000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int nThreads;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(nThreads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Benchmark
+    public double sequential() {
+        return Lecture2_3.sequentialPrimeReciprocalSum(size);
+    }
+
+    @Benchmark
+    public double parallelStream() {
+        return forkJoinPool.submit(() -> Lecture2_3.parallelPrimeReciprocalSum(size)).join();
+    }
+
+    @Benchmark
+    public double sequentialSieve() {
+        return PrimeSieve.sequentialReciprocalSum(size);
+    }
+
+    @Benchmark
+    public double parallelSieve() {
+        return PrimeSieve.reciprocalSum(forkJoinPool, size);
+    }
+}
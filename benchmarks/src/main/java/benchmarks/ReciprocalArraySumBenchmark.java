@@ -0,0 +1,100 @@
+package benchmarks;
+
+import lectures.Lecture2_1;
+import lectures.Lecture2_2.ReciprocalArraySumTask;
+import org.openjdk.jmh.annotations.*;
+import tools.DoubleArray;
+import tools.VectorKernels;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static tools.EvaluationTools.createRangeArray;
+import static tools.EvaluationTools.sequentialReciprocalArraySum;
+import static tools.ParallelReduction.reduce;
+
+/**
+ * Reciprocal array sum of {@link lectures.Lecture2_1} (one future per chunk)
+ * and {@link lectures.Lecture2_2} (recursive fork join with a fixed
+ * threshold and the adaptive {@link tools.ParallelReduction}) against the
+ * sequential loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "--add-modules", "jdk.incubator.vector"})
+public class ReciprocalArraySumBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000", "80000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int nThreads;
+
+    private double[] inputs;
+
+    private DoubleArray offHeapInputs;
+
+    private ExecutorService executorService;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        inputs = createRangeArray(size);
+        executorService = Executors.newFixedThreadPool(nThreads);
+        forkJoinPool = new ForkJoinPool(nThreads);
+        offHeapInputs = DoubleArray.createRangeArray(forkJoinPool, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdown();
+        forkJoinPool.shutdown();
+        offHeapInputs.close();
+    }
+
+    @Benchmark
+    public double sequential() {
+        return sequentialReciprocalArraySum(inputs, 0, inputs.length);
+    }
+
+    @Benchmark
+    public double sequentialSimd() {
+        return VectorKernels.reciprocalArraySum(inputs, 0, inputs.length);
+    }
+
+    @Benchmark
+    public double executorChunks() {
+        return Lecture2_1.parallelReciprocalArraySum(executorService, inputs, nThreads);
+    }
+
+    @Benchmark
+    public double executorChunksSimd() {
+        return Lecture2_1.parallelArraySum(executorService, inputs, nThreads, VectorKernels::reciprocalArraySum);
+    }
+
+    @Benchmark
+    public double executorChunksAccumulated() {
+        return Lecture2_1.accumulatedArraySum(executorService, inputs, nThreads, VectorKernels::reciprocalArraySum);
+    }
+
+    @Benchmark
+    public double forkJoin() {
+        return forkJoinPool.invoke(new ReciprocalArraySumTask(inputs, 0, inputs.length));
+    }
+
+    @Benchmark
+    public double adaptiveReduce() {
+        return reduce(forkJoinPool, inputs, 0, inputs.length, 0, x -> 1 / x, Double::sum);
+    }
+
+    @Benchmark
+    public double offHeap() {
+        return offHeapInputs.reciprocalSum(forkJoinPool);
+    }
+}
@@ -0,0 +1,447 @@
+package distributed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tools.PrimeSieve;
+
+import static tools.EvaluationTools.getChunkEndExclusive;
+import static tools.EvaluationTools.getChunkStartInclusive;
+
+/**
+ * Starts worker JVMs on this machine with a ProcessBuilder and farms tasks
+ * out to them over localhost sockets. One thread multiplexes all the
+ * connections with a Selector: it sends a task to every idle worker, and
+ * collects the partial results in task order so that a reduction does
+ * not depend on which worker finished first.
+ * <p>
+ * When no task is left to send, a task running for more than
+ * STRAGGLER_FACTOR times the median task time is sent again to an idle
+ * worker; the first result wins and the later one is dropped. A worker
+ * that disconnects has its task sent to another one.
+ */
+public final class Coordinator implements AutoCloseable {
+
+    public static final int TIMEOUT_SECONDS = 30;
+
+    public static final double STRAGGLER_FACTOR = 2.0;
+
+    private static final long POLL_MILLIS = 5;
+
+    public final int nWorkers;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private long nextTaskId;
+    private RunStatistics lastRun;
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(1 << 12);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private int workerId = -1;
+
+        /**
+         * The task the worker is computing, or -1 when it is idle.
+         */
+        private long taskId = -1;
+
+        private Connection(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * What the last run of tasks cost.
+     */
+    public static final class RunStatistics {
+        public final int tasks;
+        public final int redispatched;
+        public final long bytesSent;
+        public final long bytesReceived;
+
+        /**
+         * Time spent encoding the task frames on the coordinator.
+         */
+        public final long encodeNanos;
+
+        /**
+         * Time the workers spent computing the winning results.
+         */
+        public final long computeNanos;
+
+        public final long elapsedNanos;
+
+        private RunStatistics(
+            final int tasks,
+            final int redispatched,
+            final long bytesSent,
+            final long bytesReceived,
+            final long encodeNanos,
+            final long computeNanos,
+            final long elapsedNanos
+        ) {
+            this.tasks = tasks;
+            this.redispatched = redispatched;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.encodeNanos = encodeNanos;
+            this.computeNanos = computeNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The fraction of the worker time spent computing, the rest
+         *         goes to framing, the network and waiting.
+         */
+        public double computeShare(final int nWorkers) {
+            return computeNanos / ((double) elapsedNanos * nWorkers);
+        }
+    }
+
+    private Coordinator(final int nWorkers) throws IOException {
+        this.nWorkers = nWorkers;
+        this.server = ServerSocketChannel.open();
+        this.selector = Selector.open();
+    }
+
+    public static Coordinator start(final int nWorkers) {
+        return start(nWorkers, 0);
+    }
+
+    /**
+     * Start nWorkers worker JVMs and wait until all of them said hello.
+     *
+     * @param slowWorkerDelayMillis Added to every task of worker 0, to
+     *                              see stragglers re-dispatched; 0 for none.
+     */
+    public static Coordinator start(final int nWorkers, final long slowWorkerDelayMillis) {
+        if (nWorkers < 1) throw new IllegalArgumentException("nWorkers < 1");
+        Coordinator coordinator = null;
+        try {
+            coordinator = new Coordinator(nWorkers);
+            coordinator.launch(slowWorkerDelayMillis);
+            return coordinator;
+        } catch (IOException exc) {
+            if (coordinator != null) coordinator.close();
+            throw new UncheckedIOException(exc);
+        } catch (RuntimeException exc) {
+            if (coordinator != null) coordinator.close();
+            throw exc;
+        }
+    }
+
+    private void launch(final long slowWorkerDelayMillis) throws IOException {
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        final int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        for (int id = 0; id < nWorkers; id++)
+            processes.add(new ProcessBuilder(
+                java, "-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+                InetAddress.getLoopbackAddress().getHostAddress(), Integer.toString(port), Integer.toString(id),
+                Long.toString(id == 0 ? slowWorkerDelayMillis : 0)
+            ).inheritIO().start());
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (helloCount() < nWorkers) {
+            if (System.nanoTime() > deadline) throw new RuntimeException("Workers did not connect in time");
+            for (Process process : processes)
+                if (!process.isAlive()) throw new RuntimeException("A worker exited with " + process.exitValue());
+            selector.select(POLL_MILLIS);
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (key.isAcceptable()) accept();
+                else if (key.isReadable()) readFrames((Connection) key.attachment(), null);
+            }
+            selector.selectedKeys().clear();
+        }
+        server.keyFor(selector).cancel();
+    }
+
+    private int helloCount() {
+        int output = 0;
+        for (Connection connection : connections) if (connection.workerId >= 0) output++;
+        return output;
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        final Connection connection = new Connection(channel, key);
+        key.attach(connection);
+        connections.add(connection);
+    }
+
+    /**
+     * The sum of 1 / x over the inputs, shipped to the workers in nTasks
+     * chunks.
+     */
+    public double reciprocalArraySum(final double[] inputs, final int nTasks) {
+        final int tasks = Math.max(1, Math.min(nTasks, inputs.length));
+        final double[] partials = run(tasks, (taskId, task) -> {
+            final int start = getChunkStartInclusive(task, tasks, inputs.length);
+            final int end = Math.max(start, getChunkEndExclusive(task, tasks, inputs.length));
+            return Frames.task(
+                taskId, Workload.RECIPROCAL_ARRAY_SUM, start, end, 0,
+                inputs, Math.min(start, inputs.length), end - start
+            );
+        });
+        double output = 0;
+        for (double partial : partials) output += partial;
+        return output;
+    }
+
+    /**
+     * The sum of 1 / p for the primes p in [1, limit), with the sieve
+     * segments split in nTasks ranges; only the ranges are shipped.
+     */
+    public double primeReciprocalSum(final long limit, final int nTasks) {
+        final int nSegments = PrimeSieve.numberOfSegments(limit);
+        final int tasks = Math.max(1, Math.min(nTasks, nSegments));
+        final double[] partials = run(tasks, (taskId, task) -> Frames.task(
+            taskId, Workload.PRIME_RECIPROCAL_SUM,
+            getChunkStartInclusive(task, tasks, nSegments),
+            getChunkEndExclusive(task, tasks, nSegments),
+            limit, null, 0, 0
+        ));
+        double output = limit > 2 ? 0.5 : 0;
+        for (double partial : partials) output += partial;
+        return output;
+    }
+
+    /**
+     * Encodes the frame of a task, given its id and its index.
+     */
+    @FunctionalInterface
+    private interface TaskEncoder {
+        ByteBuffer encode(long taskId, int task);
+    }
+
+    /**
+     * Run the tasks [0, nTasks) on the workers.
+     *
+     * @return The result of every task, by index.
+     */
+    private double[] run(final int nTasks, final TaskEncoder encoder) {
+        final long startTime = System.nanoTime();
+        final long firstTaskId = nextTaskId;
+        nextTaskId += nTasks;
+        final double[] results = new double[nTasks];
+        final boolean[] done = new boolean[nTasks];
+        final int[] copies = new int[nTasks];
+        final long[] dispatchTimes = new long[nTasks];
+        final long[] durations = new long[nTasks];
+        final long[] counters = new long[4];
+        final ArrayDeque<Integer> pending = new ArrayDeque<>();
+        for (int task = 0; task < nTasks; task++) pending.add(task);
+        int remaining = nTasks, nDone = 0, redispatched = 0;
+        try {
+            while (remaining > 0) {
+                for (Connection connection : connections) {
+                    if (connection.taskId >= 0) continue;
+                    Integer task = pending.poll();
+                    if (task == null) {
+                        task = straggler(done, copies, dispatchTimes, durations, nDone);
+                        if (task == null) break;
+                        redispatched++;
+                    }
+                    final long encodeStart = System.nanoTime();
+                    final ByteBuffer frame = encoder.encode(firstTaskId + task, task);
+                    counters[0] += System.nanoTime() - encodeStart;
+                    counters[1] += frame.remaining();
+                    if (copies[task]++ == 0) dispatchTimes[task] = System.nanoTime();
+                    connection.taskId = firstTaskId + task;
+                    send(connection, frame);
+                }
+                selector.select(POLL_MILLIS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    final Connection connection = (Connection) key.attachment();
+                    if (!key.isValid()) continue;
+                    if (key.isWritable()) flush(connection);
+                    if (key.isValid() && key.isReadable()) {
+                        final List<long[]> received = new ArrayList<>();
+                        final boolean open = readFrames(connection, received);
+                        for (long[] result : received) {
+                            counters[2] += Frames.LENGTH_BYTES + Frames.RESULT_BYTES;
+                            final long task = result[0] - firstTaskId;
+                            if (task < 0 || task >= nTasks || done[(int) task]) continue;
+                            done[(int) task] = true;
+                            results[(int) task] = Double.longBitsToDouble(result[1]);
+                            counters[3] += result[2];
+                            durations[nDone++] = System.nanoTime() - dispatchTimes[(int) task];
+                            remaining--;
+                        }
+                        if (!open) {
+                            final long task = connection.taskId - firstTaskId;
+                            if (task >= 0 && task < nTasks && !done[(int) task] && --copies[(int) task] == 0)
+                                pending.addFirst((int) task);
+                            disconnect(connection);
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+                if (connections.isEmpty()) throw new RuntimeException("All the workers are gone");
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        lastRun = new RunStatistics(
+            nTasks, redispatched, counters[1], counters[2], counters[0], counters[3],
+            System.nanoTime() - startTime
+        );
+        return results;
+    }
+
+    /**
+     * @return The running task with a single copy that has been running
+     *         longest, if longer than STRAGGLER_FACTOR times the median
+     *         task time, or null.
+     */
+    private static Integer straggler(
+        final boolean[] done,
+        final int[] copies,
+        final long[] dispatchTimes,
+        final long[] durations,
+        final int nDone
+    ) {
+        if (nDone == 0) return null;
+        final long[] sorted = Arrays.copyOf(durations, nDone);
+        Arrays.sort(sorted);
+        final long threshold = (long) (STRAGGLER_FACTOR * sorted[nDone / 2]);
+        final long now = System.nanoTime();
+        Integer output = null;
+        long longest = threshold;
+        for (int task = 0; task < done.length; task++)
+            if (!done[task] && copies[task] == 1 && now - dispatchTimes[task] > longest) {
+                longest = now - dispatchTimes[task];
+                output = task;
+            }
+        return output;
+    }
+
+    private void send(final Connection connection, final ByteBuffer frame) throws IOException {
+        connection.out.add(frame);
+        flush(connection);
+    }
+
+    private void flush(final Connection connection) throws IOException {
+        while (!connection.out.isEmpty()) {
+            final ByteBuffer frame = connection.out.peek();
+            connection.channel.write(frame);
+            if (frame.hasRemaining()) break;
+            connection.out.poll();
+        }
+        connection.key.interestOps(
+            connection.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE
+        );
+    }
+
+    /**
+     * Read the available frames of a connection. A HELLO sets its worker
+     * id; a RESULT makes it idle and is added to results as {taskId, value
+     * bits, computeNanos}.
+     *
+     * @return False when the worker closed the connection.
+     */
+    private boolean readFrames(final Connection connection, final List<long[]> results) throws IOException {
+        final ByteBuffer in = connection.in;
+        final int read;
+        try {
+            read = connection.channel.read(in);
+        } catch (IOException exc) {
+            return false;
+        }
+        in.flip();
+        while (in.remaining() >= Frames.LENGTH_BYTES) {
+            final int length = in.getInt(in.position());
+            if (length < 1 || length > in.capacity() - Frames.LENGTH_BYTES)
+                throw new IOException("Bad frame length " + length);
+            if (in.remaining() < Frames.LENGTH_BYTES + length) break;
+            in.getInt();
+            final byte type = in.get();
+            if (type == Frames.HELLO) {
+                connection.workerId = in.getInt();
+            } else if (type == Frames.RESULT) {
+                final long[] result = {in.getLong(), Double.doubleToRawLongBits(in.getDouble()), in.getLong()};
+                if (result[0] == connection.taskId) connection.taskId = -1;
+                if (results != null) results.add(result);
+            } else {
+                throw new IOException("Unexpected frame type " + type);
+            }
+        }
+        in.compact();
+        return read >= 0;
+    }
+
+    private void disconnect(final Connection connection) {
+        connections.remove(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException exc) {
+            // already gone
+        }
+    }
+
+    /**
+     * @return What the last reciprocalArraySum or primeReciprocalSum cost.
+     */
+    public RunStatistics lastRun() {
+        return lastRun;
+    }
+
+    /**
+     * Tell the workers to shut down and wait for their processes.
+     */
+    @Override
+    public void close() {
+        for (Connection connection : new ArrayList<>(connections)) {
+            try {
+                connection.key.cancel();
+                selector.selectNow();
+                connection.channel.configureBlocking(true);
+                for (ByteBuffer frame : connection.out) Frames.writeFully(connection.channel, frame);
+                Frames.writeFully(connection.channel, Frames.shutdown());
+            } catch (IOException exc) {
+                // the worker is gone, its process is destroyed below
+            }
+            disconnect(connection);
+        }
+        try {
+            selector.close();
+            server.close();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        } finally {
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) process.destroyForcibly();
+                } catch (InterruptedException exc) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
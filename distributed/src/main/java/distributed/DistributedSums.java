@@ -0,0 +1,92 @@
+package distributed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tools.PrimeSieve;
+
+import static tools.EvaluationTools.*;
+
+public class DistributedSums {
+
+    public static final int TASKS_PER_WORKER = 4;
+
+    /**
+     * Run the reciprocal array sum, which ships its data, and the prime
+     * reciprocal sum, which only ships ranges, on 1, 2, 4... worker JVMs,
+     * against the same sums in this JVM on one thread. The compute share
+     * is the fraction of the worker time spent computing; the rest is
+     * framing, copies through the loopback and waiting. A last run makes
+     * one worker slow to show its tasks re-dispatched.
+     * <p>
+     * Arguments: [maxWorkers].
+     */
+    public static void main(String[] args) { // -Xms4g -Xmx4g
+        final int maxWorkers = args.length > 0
+            ? Integer.parseInt(args[0])
+            : Math.max(4, Runtime.getRuntime().availableProcessors());
+        final int size = 50_000_000;
+        final long limit = 1_000_000_000L;
+        final double[] inputs = createRangeArray(size);
+
+        final EvaluationResult<Double> localSum = evaluate(
+            "Local reciprocal sum", size, () -> sequentialReciprocalArraySum(inputs, 0, size)
+        );
+        final EvaluationResult<Double> localPrimes = evaluate(
+            "Local prime reciprocal sum", size, () -> PrimeSieve.sequentialReciprocalSum(limit)
+        );
+        final List<String> rows = new ArrayList<>();
+        for (int nWorkers = 1; nWorkers <= maxWorkers; nWorkers *= 2) {
+            final long startTime = System.nanoTime();
+            try (Coordinator coordinator = Coordinator.start(nWorkers)) {
+                final long startup = System.nanoTime() - startTime;
+                final int nTasks = TASKS_PER_WORKER * nWorkers;
+                final EvaluationResult<Double> sum = evaluate(
+                    "Distributed reciprocal sum - " + nWorkers + " workers", size,
+                    () -> coordinator.reciprocalArraySum(inputs, nTasks)
+                );
+                check(localSum.result, sum.result);
+                rows.add(row("reciprocal sum", coordinator, localSum.time, sum.time, startup));
+                final EvaluationResult<Double> primes = evaluate(
+                    "Distributed prime reciprocal sum - " + nWorkers + " workers", size,
+                    () -> coordinator.primeReciprocalSum(limit, nTasks)
+                );
+                check(localPrimes.result, primes.result);
+                rows.add(row("prime reciprocal sum", coordinator, localPrimes.time, primes.time, startup));
+            }
+        }
+        try (Coordinator coordinator = Coordinator.start(Math.min(maxWorkers, 4), 2_000)) {
+            final EvaluationResult<Double> primes = evaluate(
+                "Distributed prime reciprocal sum - one slow worker", size,
+                () -> coordinator.primeReciprocalSum(limit, TASKS_PER_WORKER * coordinator.nWorkers)
+            );
+            check(localPrimes.result, primes.result);
+            rows.add(row("with a slow worker", coordinator, localPrimes.time, primes.time, 0));
+        }
+
+        printNumberOfThreads();
+        for (String row : rows) printer().println(row);
+    }
+
+    private static String row(
+        final String title,
+        final Coordinator coordinator,
+        final long localTime,
+        final long time,
+        final long startup
+    ) {
+        final Coordinator.RunStatistics run = coordinator.lastRun();
+        return String.format(
+            "%-20s %2d workers - %10.3fms, speedup %5.2f - sent %9.3fMB, encode %8.3fms" +
+                " - compute share %5.1f%% - %d tasks, %d re-dispatched - startup %8.3fms",
+            title, coordinator.nWorkers, time / 1e6, localTime / (double) time,
+            run.bytesSent / 1e6, run.encodeNanos / 1e6,
+            100 * run.computeShare(coordinator.nWorkers), run.tasks, run.redispatched, startup / 1e6
+        );
+    }
+
+    private static void check(final double expected, final double actual) {
+        if (Math.abs(expected - actual) > 1e-12 * Math.abs(expected))
+            throw new RuntimeException("Inconsistent output: " + expected + " != " + actual);
+    }
+}
@@ -0,0 +1,104 @@
+package distributed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The binary framing between the coordinator and the workers. A frame is
+ * the int length of the rest of the frame, a type byte and a payload of
+ * big-endian primitives:
+ * <ul>
+ * <li>HELLO: int workerId, the first frame of a worker.</li>
+ * <li>TASK: long taskId, byte workload, long start, long end, long
+ * parameter, int count, then count doubles of data.</li>
+ * <li>RESULT: long taskId, double value, long computeNanos.</li>
+ * <li>SHUTDOWN: no payload.</li>
+ * </ul>
+ */
+final class Frames {
+
+    static final byte HELLO = 1;
+    static final byte TASK = 2;
+    static final byte RESULT = 3;
+    static final byte SHUTDOWN = 4;
+
+    static final int LENGTH_BYTES = Integer.BYTES;
+
+    static final int TASK_HEADER_BYTES = 1 + Long.BYTES + 1 + 3 * Long.BYTES + Integer.BYTES;
+
+    static final int RESULT_BYTES = 1 + Long.BYTES + Double.BYTES + Long.BYTES;
+
+    private Frames() {
+    }
+
+    static ByteBuffer hello(final int workerId) {
+        return ByteBuffer.allocate(LENGTH_BYTES + 1 + Integer.BYTES)
+            .putInt(1 + Integer.BYTES).put(HELLO).putInt(workerId)
+            .flip();
+    }
+
+    /**
+     * @param data   The doubles shipped with the task, or null.
+     * @param from   The first of them.
+     * @param count  How many of them.
+     */
+    static ByteBuffer task(
+        final long taskId,
+        final Workload workload,
+        final long start,
+        final long end,
+        final long parameter,
+        final double[] data,
+        final int from,
+        final int count
+    ) {
+        final int length = Math.toIntExact(TASK_HEADER_BYTES + (long) count * Double.BYTES);
+        final ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + length)
+            .putInt(length).put(TASK)
+            .putLong(taskId).put((byte) workload.ordinal())
+            .putLong(start).putLong(end).putLong(parameter)
+            .putInt(count);
+        if (count > 0) frame.asDoubleBuffer().put(data, from, count);
+        return frame.position(0);
+    }
+
+    static ByteBuffer result(final long taskId, final double value, final long computeNanos) {
+        return ByteBuffer.allocate(LENGTH_BYTES + RESULT_BYTES)
+            .putInt(RESULT_BYTES).put(RESULT)
+            .putLong(taskId).putDouble(value).putLong(computeNanos)
+            .flip();
+    }
+
+    static ByteBuffer shutdown() {
+        return ByteBuffer.allocate(LENGTH_BYTES + 1).putInt(1).put(SHUTDOWN).flip();
+    }
+
+    /**
+     * Read the next frame from a blocking channel, in the given buffer if it
+     * is large enough.
+     *
+     * @return The frame from its type byte to its end.
+     */
+    static ByteBuffer read(final ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(LENGTH_BYTES);
+        readFully(channel, buffer);
+        final int length = buffer.getInt(0);
+        if (length < 1) throw new IOException("Bad frame length " + length);
+        if (buffer.capacity() < length) buffer = ByteBuffer.allocate(length);
+        buffer.clear().limit(length);
+        readFully(channel, buffer);
+        return buffer.flip();
+    }
+
+    static void readFully(final ReadableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0) throw new EOFException("Connection closed");
+    }
+
+    static void writeFully(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
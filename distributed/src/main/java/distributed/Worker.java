@@ -0,0 +1,78 @@
+package distributed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.SocketChannel;
+
+import tools.PrimeSieve;
+
+/**
+ * A worker JVM: connects to the coordinator, says hello, then computes
+ * the tasks it receives one at a time on its main thread until it is told
+ * to shut down.
+ * <p>
+ * Arguments: host port workerId [delayMillis]. A delay makes every task of
+ * this worker slower, to simulate a straggler.
+ */
+public final class Worker {
+
+    private Worker() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final String host = args[0];
+        final int port = Integer.parseInt(args[1]);
+        final int workerId = Integer.parseInt(args[2]);
+        final long delayMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Frames.writeFully(channel, Frames.hello(workerId));
+            ByteBuffer frame = ByteBuffer.allocate(1 << 16);
+            while (true) {
+                frame = Frames.read(channel, frame);
+                final byte type = frame.get();
+                if (type == Frames.SHUTDOWN) return;
+                if (type != Frames.TASK) throw new IOException("Unexpected frame type " + type);
+                final long taskId = frame.getLong();
+                final Workload workload = Workload.values()[frame.get()];
+                final long start = frame.getLong();
+                final long end = frame.getLong();
+                final long parameter = frame.getLong();
+                final int count = frame.getInt();
+                final long startTime = System.nanoTime();
+                final double value = compute(workload, start, end, parameter, frame.asDoubleBuffer(), count);
+                if (delayMillis > 0) Thread.sleep(delayMillis);
+                Frames.writeFully(channel, Frames.result(taskId, value, System.nanoTime() - startTime));
+            }
+        }
+    }
+
+    /**
+     * @param data The doubles of the frame, read in place.
+     */
+    static double compute(
+        final Workload workload,
+        final long start,
+        final long end,
+        final long parameter,
+        final DoubleBuffer data,
+        final int count
+    ) {
+        switch (workload) {
+            case RECIPROCAL_ARRAY_SUM: {
+                double output = 0;
+                for (int i = 0; i < count; i++) output += 1 / data.get(i);
+                return output;
+            }
+            case PRIME_RECIPROCAL_SUM:
+                return PrimeSieve.reciprocalSumOfSegments(
+                    Math.toIntExact(start), Math.toIntExact(end), parameter
+                );
+            default:
+                throw new IllegalArgumentException("Unknown workload " + workload);
+        }
+    }
+}
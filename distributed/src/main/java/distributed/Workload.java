@@ -0,0 +1,18 @@
+package distributed;
+
+/**
+ * What a task computes. The ordinal is the workload byte of a TASK frame.
+ */
+public enum Workload {
+
+    /**
+     * The sum of 1 / x over the doubles shipped with the task.
+     */
+    RECIPROCAL_ARRAY_SUM,
+
+    /**
+     * The sum of 1 / p over the odd primes p of the sieve segments [start,
+     * end) below the limit in the parameter; only the range is shipped.
+     */
+    PRIME_RECIPROCAL_SUM
+}
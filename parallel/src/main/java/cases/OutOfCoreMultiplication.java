@@ -0,0 +1,93 @@
+package cases;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import tools.ComputeRuntime;
+import tools.TiledMatrixFile;
+
+import static tools.EvaluationTools.*;
+import static tools.MatrixTools.*;
+
+public class OutOfCoreMultiplication {
+
+    /**
+     * Multiply square matrices stored in tiled files in a directory, by
+     * default the temporary directory. The heap only holds a few tiles per
+     * thread, so with a size whose three matrices exceed the memory the
+     * operating system pages the files in and out.
+     * <p>
+     * Arguments: [directory [size [tileSize]]].
+     */
+    public static void main(String[] args) { // -ea -Xms1g -Xmx1g
+        final Path directory = Paths.get(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        final int size = args.length > 1 ? Integer.parseInt(args[1]) : 8192;
+        final int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+
+        check(forkJoinPool, directory, 300, 128);
+        final Path a = directory.resolve("A.tiles"), b = directory.resolve("B.tiles");
+        final Path output = directory.resolve("C.tiles");
+        try (
+            TiledMatrixFile A = TiledMatrixFile.createRange(forkJoinPool, a, size, size, tileSize);
+            TiledMatrixFile B = TiledMatrixFile.createRange(forkJoinPool, b, size, size, tileSize)
+        ) {
+            // every run truncates the output file, so it unmaps the product of the previous one first
+            final TiledMatrixFile[] product = new TiledMatrixFile[1];
+            final EvaluationResult<TiledMatrixFile> result = evaluate(
+                "Out-of-core product - " + size + "x" + size + " in tiles of " + tileSize, size,
+                () -> {
+                    if (product[0] != null) product[0].close();
+                    return product[0] = outOfCoreProductOf(forkJoinPool, A, B, output);
+                }
+            );
+            try (TiledMatrixFile C = result.result) {
+                C.force();
+            }
+            printNumberOfThreads(runtime.parallelism);
+            runtime.printStartup();
+            printer().printf(
+                "%,d MB per matrix, %.3f GFLOP/s%n",
+                (long) A.numberOfTiles() * tileSize * tileSize * Double.BYTES >> 20,
+                2.0 * size * size * size / result.time
+            );
+        }
+        delete(a, b, output);
+    }
+
+    /**
+     * Compare the out-of-core product of small range matrices, whose size is
+     * not a multiple of the tile size, with the in-memory product.
+     */
+    public static void check(
+        final ForkJoinPool forkJoinPool,
+        final Path directory,
+        final int size,
+        final int tileSize
+    ) {
+        final Path a = directory.resolve("check-A.tiles"), b = directory.resolve("check-B.tiles");
+        final Path c = directory.resolve("check-C.tiles");
+        try (
+            TiledMatrixFile A = TiledMatrixFile.createRange(forkJoinPool, a, size, size + 7, tileSize);
+            TiledMatrixFile B = TiledMatrixFile.createRange(forkJoinPool, b, size + 7, size - 5, tileSize);
+            TiledMatrixFile C = outOfCoreProductOf(forkJoinPool, A, B, c)
+        ) {
+            if (!matrixEquals(blockedProductOf(A.toArray(), B.toArray()), C.toArray(), 1e-9))
+                throw new RuntimeException("Inconsistent output!");
+        }
+        delete(a, b, c);
+    }
+
+    private static void delete(final Path... files) {
+        try {
+            for (Path file : files) Files.deleteIfExists(file);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cases;
+
+import java.nio.file.Path;
+
+import lectures.Lecture2_1;
+import lectures.Lecture2_2;
+import tools.ScalingStudy;
+
+import static tools.EvaluationTools.printNumberOfThreads;
+
+public class ScalingStudies {
+
+    /**
+     * Sweep the reciprocal sums over sizes and 1..N threads and write one CSV
+     * and one JSON report per workload into the directory given as the first
+     * argument, the working directory by default.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g --add-modules jdk.incubator.vector
+        final Path directory = Path.of(args.length > 0 ? args[0] : ".");
+        final int scale = 10_000_000;
+        final int[] sizes = {1 * scale, 4 * scale, 16 * scale};
+        final int[] threadCounts = ScalingStudy.threadCounts();
+        final int nIterations = 1;
+
+        final ScalingStudy futures = ScalingStudy.sweep(
+            "Lecture2_1", Lecture2_1::run, sizes, threadCounts, nIterations
+        );
+        final ScalingStudy forkJoin = ScalingStudy.sweep(
+            "Lecture2_2", Lecture2_2::run, sizes, threadCounts, nIterations
+        );
+
+        printNumberOfThreads();
+        for (ScalingStudy study : new ScalingStudy[]{futures, forkJoin}) {
+            study.print();
+            study.writeCsv(directory.resolve(study.name + ".csv"));
+            study.writeJson(directory.resolve(study.name + ".json"));
+        }
+    }
+}
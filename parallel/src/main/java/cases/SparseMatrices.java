@@ -0,0 +1,66 @@
+package cases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import tools.ComputeRuntime;
+import tools.CsrMatrix;
+
+import static tools.EvaluationTools.*;
+import static tools.MatrixTools.*;
+
+public class SparseMatrices {
+
+    public static final int NON_ZEROS_PER_ROW = 8;
+
+    /**
+     * Sparse matrix vector and sparse matrix matrix products of square
+     * matrices with NON_ZEROS_PER_ROW nonzeros per row, so the work grows
+     * linearly with the size.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final int scale = 100_000;
+        final List<ResultTuple<double[]>> vectorResults = new ArrayList<>();
+        final List<ResultTuple<CsrMatrix>> matrixResults = new ArrayList<>();
+        for (int size : new int[]{1 * scale, 2 * scale, 4 * scale, 8 * scale}) {
+            final CsrMatrix A = CsrMatrix.random(size, size, NON_ZEROS_PER_ROW / (double) size, 1);
+            vectorResults.add(averageResults(() -> runVector(runtime, A), 1));
+            matrixResults.add(averageResults(() -> runMatrix(runtime, A), 1));
+        }
+        printNumberOfThreads(runtime.parallelism);
+        runtime.printStartup();
+        printer().println("Sparse matrix times vector:");
+        printEvaluationResults(vectorResults);
+        printer().println("Sparse matrix times sparse matrix:");
+        printEvaluationResults(matrixResults);
+    }
+
+    public static ResultTuple<double[]> runVector(final ComputeRuntime runtime, final CsrMatrix A) {
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final double[] x = createRangeArray(A.width);
+        final ResultTuple<double[]> resultTuple = evaluateBoth(
+            "Sequential SpMV", A.height, () -> sequentialSparseProductOf(A, x),
+            "Parallel SpMV", A.height, () -> sparseProductOf(forkJoinPool, A, x)
+        );
+        for (int i = 0; i < A.height; i++)
+            if (resultTuple.A.result[i] != resultTuple.B.result[i])
+                throw new RuntimeException("Inconsistent output!");
+        return resultTuple;
+    }
+
+    public static ResultTuple<CsrMatrix> runMatrix(final ComputeRuntime runtime, final CsrMatrix A) {
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final ResultTuple<CsrMatrix> resultTuple = evaluateBoth(
+            "Sequential SpGEMM", A.height, () -> sequentialSparseProductOf(A, A),
+            "Parallel SpGEMM", A.height, () -> sparseProductOf(forkJoinPool, A, A)
+        );
+        final CsrMatrix C = resultTuple.A.result, D = resultTuple.B.result;
+        if (C.numberOfNonZeros() != D.numberOfNonZeros()) throw new RuntimeException("Inconsistent output!");
+        for (int k = 0; k < C.numberOfNonZeros(); k++)
+            if (C.columnIndexes[k] != D.columnIndexes[k] || C.values[k] != D.values[k])
+                throw new RuntimeException("Inconsistent output!");
+        return resultTuple;
+    }
+}
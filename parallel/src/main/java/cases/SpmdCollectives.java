@@ -0,0 +1,128 @@
+package cases;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import tools.ComputeRuntime;
+import tools.ParallelFor;
+import tools.ParallelReduction;
+import tools.Spmd;
+
+import static tools.EvaluationTools.*;
+
+public class SpmdCollectives {
+
+    private static final int ITERATIONS = 20;
+
+    /**
+     * The latency of the collectives of {@link Spmd} at 1, 2, 4 .. ranks,
+     * then an iterative kernel written as SPMD ranks that exchange an
+     * allreduce per iteration, against the same kernel as fork-join loops.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final int size = 10_000_000;
+        final int nChunks = 4 * runtime.parallelism;
+
+        printNumberOfThreads(runtime.parallelism);
+        runtime.printStartup();
+        printer().println("collective latency, us per operation");
+        printer().printf(
+            "%6s %10s %10s %10s %14s %14s%n",
+            "ranks", "barrier", "broadcast", "allreduce", "tree allreduce", "ring allreduce"
+        );
+        for (int ranks = 1; ranks <= Math.max(8, 2 * runtime.parallelism); ranks *= 2)
+            printLatencies(ranks);
+
+        final ResultTuple<double[]> kernels = evaluateBoth(
+            "Fork-join kernel", size, () -> forkJoinKernel(forkJoinPool, createRangeArray(forkJoinPool, size), nChunks),
+            "SPMD kernel", size, () -> spmdKernel(createRangeArray(forkJoinPool, size), runtime.parallelism)
+        );
+        for (int i = 0; i < size; i++)
+            if (Math.abs(kernels.A.result[i] - kernels.B.result[i]) > 1e-9 * Math.abs(kernels.A.result[i]))
+                throw new RuntimeException("Inconsistent outputs at " + i);
+        printEvaluationResults(List.of(kernels));
+    }
+
+    /**
+     * Time each collective on every rank between two barriers, and print
+     * the mean of rank 0. The short arrays of the tree allreduce and the
+     * long ones of the ring allreduce have as many elements per rank.
+     */
+    private static void printLatencies(final int ranks) {
+        final int repetitions = 2000;
+        final int treeLength = Spmd.RING_THRESHOLD - 1;
+        final int ringLength = Spmd.RING_THRESHOLD * ranks;
+        final double[] latencies = new double[5];
+        Spmd.run(ranks, rank -> {
+            final double[] broadcast = new double[8];
+            final double[] tree = new double[treeLength * ranks];
+            final double[] ring = new double[ringLength];
+            for (int round = 0; round < 2; round++) {
+                final long[] times = new long[5];
+                for (int repetition = 0; repetition < repetitions; repetition++) {
+                    rank.barrier();
+                    long start = System.nanoTime();
+                    rank.barrier();
+                    times[0] += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    rank.broadcast(broadcast, 0);
+                    times[1] += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    rank.allreduceDouble(rank.rank(), Double::sum);
+                    times[2] += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    rank.allreduce(tree, Double::sum);
+                    times[3] += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    rank.allreduce(ring, Double::sum);
+                    times[4] += System.nanoTime() - start;
+                }
+                if (rank.rank() == 0 && round == 1)
+                    for (int i = 0; i < times.length; i++) latencies[i] = times[i] / 1e3 / repetitions;
+            }
+        });
+        printer().printf(
+            "%6d %10.2f %10.2f %10.2f %14.2f %14.2f%n",
+            ranks, latencies[0], latencies[1], latencies[2], latencies[3], latencies[4]
+        );
+    }
+
+    /**
+     * Each iteration sums the reciprocals of the array, then adds the
+     * reciprocal of that sum to every element.
+     */
+    static double[] forkJoinKernel(final ForkJoinPool forkJoinPool, final double[] array, final int nChunks) {
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            final double increment = 1 / ParallelReduction.reduce(
+                forkJoinPool, array, 0, array.length, 0, x -> 1 / x, Double::sum
+            );
+            ParallelFor.forRange(forkJoinPool, array.length, nChunks, (start, end) -> {
+                for (int i = start; i < end; i++) array[i] += increment;
+            });
+        }
+        return array;
+    }
+
+    /**
+     * The same kernel on ranks: rank 0 scatters the array, every rank
+     * iterates on its own chunk with one allreduce per iteration, and rank 0
+     * gathers the chunks back.
+     */
+    static double[] spmdKernel(final double[] array, final int ranks) {
+        final double[][] output = new double[1][];
+        Spmd.run(ranks, rank -> {
+            final double[] chunk = rank.scatter(rank.rank() == 0 ? array : null, 0);
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                double sum = 0;
+                for (double x : chunk) sum += 1 / x;
+                final double increment = 1 / rank.allreduceDouble(sum, Double::sum);
+                for (int i = 0; i < chunk.length; i++) chunk[i] += increment;
+            }
+            final double[] gathered = rank.gather(chunk, 0);
+            if (rank.rank() == 0) output[0] = gathered;
+        });
+        return output[0];
+    }
+}
@@ -0,0 +1,75 @@
+package cases;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lectures.Lecture2_1;
+import tools.ComputeRuntime;
+import tools.EvaluationTools;
+import tools.ExecutionStrategy;
+
+import static tools.EvaluationTools.*;
+
+public class StrategyComparison {
+
+    /**
+     * Run the chunked reciprocal sum of Lecture2_1, the pow loop of
+     * WithCompletableFutures and empty tasks with every execution strategy
+     * and an increasing number of chunks. The empty tasks give the cost of
+     * spawning and joining one task. Virtual threads are only measured on
+     * JDK 21 and later.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final List<ExecutionStrategy> strategies = ExecutionStrategy.all(runtime);
+        final int size = 40_000_000;
+        final int[] chunkCounts = {runtime.parallelism, 64, 1024, 16_384};
+        final double[] inputs = createRangeArray(size);
+        final double expectedSum = sequentialReciprocalArraySum(inputs, 0, size);
+        final double[] expectedPow = WithCompletableFutures.sequentialPow(size, Math.PI);
+
+        final List<String> rows = new ArrayList<>();
+        try {
+            for (int nChunks : chunkCounts)
+                for (ExecutionStrategy strategy : strategies) {
+                    final String title = strategy.name + " - " + nChunks + " chunks";
+                    final EvaluationResult<Double> sum = evaluate(
+                        "Reciprocal sum - " + title, size,
+                        () -> Lecture2_1.parallelArraySum(
+                            strategy, inputs, nChunks, EvaluationTools::sequentialReciprocalArraySum
+                        )
+                    );
+                    final EvaluationResult<double[]> pow = evaluate(
+                        "Pow - " + title, size,
+                        () -> WithCompletableFutures.parallelPow(strategy, size, nChunks, Math.PI)
+                    );
+                    checkOutput(expectedSum, sum.result);
+                    for (int i = 0; i < size; i++) checkOutput(expectedPow[i], pow.result[i]);
+                    final EvaluationResult<Integer> empty = evaluate(
+                        "Empty tasks - " + title, nChunks,
+                        () -> {
+                            strategy.forEachChunk(nChunks, chunk -> {});
+                            return nChunks;
+                        }
+                    );
+                    rows.add(String.format(
+                        "%-28s %,7d chunks - sum %10.3fms - pow %10.3fms - spawn and join %8.3fus per task",
+                        strategy.name, nChunks, sum.time / 1e6, pow.time / 1e6, empty.time / 1e3 / nChunks
+                    ));
+                }
+        } finally {
+            for (ExecutionStrategy strategy : strategies) strategy.close();
+        }
+
+        printNumberOfThreads(runtime.parallelism);
+        runtime.printStartup();
+        if (!ExecutionStrategy.virtualThreadsAvailable())
+            printer().println("virtual threads need JDK 21, running on " + Runtime.version());
+        for (String row : rows) printer().println(row);
+    }
+
+    private static void checkOutput(final double expected, final double actual) {
+        if (Math.abs(actual - expected) > 1e-9 * Math.abs(expected))
+            throw new RuntimeException("Inconsistent output! " + actual + " != " + expected);
+    }
+}
@@ -0,0 +1,92 @@
+package cases;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import lectures.Lecture4_1;
+import tools.ComputeRuntime;
+import tools.ParallelReduction;
+import tools.PhasedExecutor;
+import tools.TaskGraph;
+import tools.TaskGraph.Node;
+
+import static tools.EvaluationTools.*;
+
+public class TaskGraphs {
+
+    /**
+     * The kernel of Lecture4_1 as a graph of two parallel loops, the fill
+     * and the kernel, against the sequential kernel and the phased one; then
+     * a pipeline whose last stage takes the first of two reductions, and a
+     * failure that cancels the rest of its graph.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final PhasedExecutor phasedExecutor = runtime.phasedExecutor();
+        final int size = 50_000_000;
+        final int nChunks = 4 * runtime.parallelism;
+
+        final Supplier<double[]> allocate = () -> new double[size];
+        final ResultTuple<double[]> kernels = compareResults(
+            evaluate("Sequential kernel", size, allocate, Lecture4_1::sequentialKernel),
+            evaluate("Phased kernel", size, allocate, output -> {
+                Lecture4_1.parallelKernel(phasedExecutor, output);
+                return output;
+            }),
+            evaluate("Graph kernel", size, allocate, output -> graphKernel(forkJoinPool, output, nChunks))
+        );
+        for (int i = 0; i < size; i++)
+            if (kernels.A.result[i] != kernels.B.result[i] || kernels.A.result[i] != kernels.C.result[i])
+                throw new RuntimeException("Inconsistent outputs");
+
+        final TaskGraph pipeline = new TaskGraph(forkJoinPool);
+        final Node<double[]> inputs = pipeline.supply("inputs", () -> createRangeArray(forkJoinPool, size));
+        final List<Supplier<Double>> sums = List.of(
+            () -> ParallelReduction.reduce(forkJoinPool, inputs.get(), 0, size, 0, x -> 1 / x, Double::sum),
+            () -> sequentialReciprocalArraySum(inputs.get(), 0, size)
+        );
+        final Node<Double> firstSum = pipeline.anyOf("first sum", sums, inputs);
+        pipeline.join();
+
+        final TaskGraph failing = new TaskGraph(forkJoinPool);
+        final boolean[] dependentRan = new boolean[1];
+        final Node<Void> failure = failing.run("failure", () -> {
+            throw new IllegalStateException("expected failure");
+        });
+        failing.run("dependent", () -> dependentRan[0] = true, failure);
+        String failureMessage = null;
+        try {
+            failing.join();
+        } catch (RuntimeException exc) {
+            failureMessage = exc.getCause().getMessage();
+        }
+        if (failureMessage == null || dependentRan[0] || !failing.isCancelled())
+            throw new RuntimeException("The failure did not cancel the graph");
+
+        printNumberOfThreads(runtime.parallelism);
+        runtime.printStartup();
+        printEvaluationResults(List.of(kernels));
+        printer().printf("first reciprocal sum: %.6f%n", firstSum.get());
+        printer().println("cancelled after: " + failureMessage);
+    }
+
+    /**
+     * Fill the output with the range and run the kernel of Lecture4_1 on
+     * it, as two loops of nChunks chunks, the second after the first.
+     */
+    public static double[] graphKernel(final ForkJoinPool forkJoinPool, final double[] output, final int nChunks) {
+        final TaskGraph graph = new TaskGraph(forkJoinPool);
+        final Node<Void> fill = graph.forRange("fill", output.length, nChunks, (start, end) -> {
+            for (int j = start; j < end; j++) output[j] = j + 1.0;
+        });
+        graph.forRange("kernel", output.length, nChunks, (start, end) -> {
+            for (int j = start; j < end; j++)
+                for (int k = 0; k < 20; k++)
+                    output[j] = output[j] * output[j] / 2.0;
+        }, fill);
+        graph.join();
+        return output;
+    }
+}
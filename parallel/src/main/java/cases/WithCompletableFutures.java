@@ -1,74 +1,190 @@
 package cases;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import tools.ComputeRuntime;
+import tools.ExecutionStrategy;
+import tools.ParallelFor;
+import tools.TaskGraph;
+import tools.VectorKernels;
+import tools.WorkSpan;
 
 import static tools.EvaluationTools.*;
 
 public class WithCompletableFutures {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) { // --add-modules jdk.incubator.vector
         run(10_000_000);
         warmupEnd();
         var results = Arrays.asList(
             averageResults(() -> run(200_000_000), 1)
         );
         printNumberOfThreads();
+        ComputeRuntime.shared().printStartup();
         printEvaluationResults(results);
     }
 
     public static ResultTuple<double[]> run(final int size) {
+        return run(ComputeRuntime.shared(), size);
+    }
+
+    public static ResultTuple<double[]> run(final ComputeRuntime runtime, final int size) {
         final double power = Math.PI;
 
-        ResultTuple<double[]> resultTuple = evaluateBoth(
-            "Sequential", size, () -> {
-                double[] toBeRaised = createRangeArray(size);
-                for (int i = 0; i < toBeRaised.length; i++)
-                    toBeRaised[i] = Math.pow(toBeRaised[i], power);
-                return toBeRaised;
-            },
-            "Parallel", size, () -> {
-                double[] toBeRaised = createRangeArray(size);
-                final int numberOfElements = toBeRaised.length;
-                final int numberOfChunks = Runtime.getRuntime().availableProcessors();
-                parallelLoop(
-                    numberOfElements,
-                    numberOfChunks,
-                    i -> toBeRaised[i] = Math.pow(toBeRaised[i], power)
-                );
-                return toBeRaised;
-            }
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final int numberOfChunks = runtime.parallelism;
+        final Supplier<double[]> fill = () -> createRangeArray(forkJoinPool, size);
+        ResultTuple<double[]> resultTuple = compareResults(
+            evaluate("Sequential", size, fill, inputs -> sequentialPow(inputs, power)),
+            evaluate("Parallel", size, fill, inputs -> parallelPow(forkJoinPool, inputs, numberOfChunks, power)),
+            evaluate("Parallel SIMD", size, fill, inputs -> parallelVectorPow(forkJoinPool, inputs, numberOfChunks, power))
         );
         return resultTuple;
     }
 
+    public static double[] sequentialPow(final int size, final double power) {
+        return sequentialPow(createRangeArray(size), power);
+    }
+
+    /**
+     * Raise the elements of the array to the power in place.
+     */
+    public static double[] sequentialPow(final double[] toBeRaised, final double power) {
+        for (int i = 0; i < toBeRaised.length; i++)
+            toBeRaised[i] = Math.pow(toBeRaised[i], power);
+        return toBeRaised;
+    }
+
+    public static double[] parallelPow(
+        final Executor executor,
+        final int size,
+        final int numberOfChunks,
+        final double power
+    ) {
+        return parallelPow(executor, createRangeArray(size), numberOfChunks, power);
+    }
+
+    public static double[] parallelPow(
+        final Executor executor,
+        final double[] toBeRaised,
+        final int numberOfChunks,
+        final double power
+    ) {
+        parallelLoop(
+            executor,
+            toBeRaised.length,
+            numberOfChunks,
+            i -> toBeRaised[i] = Math.pow(toBeRaised[i], power)
+        );
+        return toBeRaised;
+    }
+
+    /**
+     * The chunks of {@link #parallelPow(Executor, int, int, double)} spawned
+     * all at once and joined by the strategy, instead of a chain of futures.
+     */
+    public static double[] parallelPow(
+        final ExecutionStrategy strategy,
+        final int size,
+        final int numberOfChunks,
+        final double power
+    ) {
+        double[] toBeRaised = createRangeArray(size);
+        strategy.forEachChunk(numberOfChunks, chunk -> {
+            final int end = getChunkEndExclusive(chunk, numberOfChunks, size);
+            final int start = Math.min(getChunkStartInclusive(chunk, numberOfChunks, size), end);
+            for (int i = start; i < end; i++) toBeRaised[i] = Math.pow(toBeRaised[i], power);
+        });
+        return toBeRaised;
+    }
+
+    public static double[] parallelVectorPow(
+        final ForkJoinPool forkJoinPool,
+        final int size,
+        final int numberOfChunks,
+        final double power
+    ) {
+        return parallelVectorPow(forkJoinPool, createRangeArray(size), numberOfChunks, power);
+    }
+
+    public static double[] parallelVectorPow(
+        final ForkJoinPool forkJoinPool,
+        final double[] toBeRaised,
+        final int numberOfChunks,
+        final double power
+    ) {
+        ParallelFor.forRange(
+            forkJoinPool,
+            toBeRaised.length,
+            numberOfChunks,
+            (start, end) -> VectorKernels.pow(toBeRaised, start, end, power)
+        );
+        return toBeRaised;
+    }
+
     public static void parallelLoop(
+        final Executor executor,
         final int numberOfElements,
         final int numberOfChunks,
-        final Consumer<Integer> loopBody
+        final IntConsumer loopBody
     ) {
-        parallelLoop0(numberOfElements, 0, numberOfChunks, loopBody);
+        parallelLoop0(executor, numberOfElements, 0, numberOfChunks, numberOfChunks, loopBody);
     }
 
+    /**
+     * Start the upper half of the chunks [chunkStart, chunkEnd) as a future
+     * and keep splitting the lower half, so that the futures form a binary
+     * tree and the last chunk starts after O(log numberOfChunks) hops.
+     */
     private static void parallelLoop0(
+        final Executor executor,
         final int numberOfElements,
-        final int chunkNumber,
+        final int chunkStart,
+        final int chunkEnd,
         final int numberOfChunks,
-        final Consumer<Integer> loopBody
+        final IntConsumer loopBody
     ) {
-        printCurrentThread();
-        final int nextChunkNumber = chunkNumber + 1;
-        final var future = nextChunkNumber >= numberOfChunks ? null :
-            CompletableFuture.runAsync(() -> parallelLoop0(
+        final List<WorkSpan.Async> upperHalves = new ArrayList<>();
+        int end = chunkEnd;
+        while (end - chunkStart > 1) {
+            final int mid = (chunkStart + end) >>> 1, upperEnd = end;
+            upperHalves.add(WorkSpan.runAsync(() -> parallelLoop0(
+                executor,
                 numberOfElements,
-                nextChunkNumber,
+                mid,
+                upperEnd,
                 numberOfChunks,
                 loopBody
-            ));
-        final int startIndexInclusive = chunkNumber * numberOfElements / numberOfChunks;
-        final int endIndexExclusive = nextChunkNumber * numberOfElements / numberOfChunks;
+            ), executor));
+            end = mid;
+        }
+        final int startIndexInclusive = (int) ((long) chunkStart * numberOfElements / numberOfChunks);
+        final int endIndexExclusive = (int) ((long) (chunkStart + 1) * numberOfElements / numberOfChunks);
         for (int i = startIndexInclusive; i < endIndexExclusive; i++) loopBody.accept(i);
-        if (future != null) future.join();
+        for (WorkSpan.Async upperHalf : upperHalves) upperHalf.join();
+    }
+
+    /**
+     * The pow loop as a {@link TaskGraph}: the chunks are futures started by
+     * a tree of futures, and no thread blocks until the final join.
+     */
+    public static double[] graphPow(
+        final Executor executor,
+        final double[] toBeRaised,
+        final int numberOfChunks,
+        final double power
+    ) {
+        final TaskGraph graph = new TaskGraph(executor);
+        graph.forRange("pow", toBeRaised.length, numberOfChunks, (start, end) -> {
+            for (int i = start; i < end; i++) toBeRaised[i] = Math.pow(toBeRaised[i], power);
+        });
+        graph.join();
+        return toBeRaised;
     }
 }
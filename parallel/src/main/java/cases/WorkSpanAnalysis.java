@@ -0,0 +1,131 @@
+package cases;
+
+import java.util.concurrent.ForkJoinPool;
+
+import tools.ComputeRuntime;
+import tools.InstrumentedRecursiveAction;
+import tools.InstrumentedRecursiveTask;
+import tools.WorkSpan;
+
+import static tools.EvaluationTools.*;
+import static tools.MatrixTools.*;
+
+public class WorkSpanAnalysis {
+
+    /**
+     * Measure work, span and ideal parallelism of the fork join reciprocal
+     * sum, the task per cell matrix multiplication and the future tree of
+     * parallelLoop. A parallelism far above the number of processors with a
+     * poor speedup points at scheduling overhead, a parallelism close to it
+     * at the shape of the computation graph.
+     */
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+        final ComputeRuntime runtime = ComputeRuntime.shared();
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final int nThreads = runtime.parallelism;
+        printNumberOfThreads(nThreads);
+        runtime.printStartup();
+
+        final double[] inputs = createRangeArray(80_000_000);
+        WorkSpan.invoke(forkJoinPool, new ReciprocalArraySumTask(inputs, 0, inputs.length))
+            .print("ReciprocalArraySumTask of size " + inputs.length);
+
+        final double[][] matrix = createRangeSquareMatrix(200);
+        WorkSpan.invoke(forkJoinPool, new MatrixMultiplication(
+            matrix, matrix, resultMatrixOf(matrix, matrix)
+        )).print("MatrixMultiplication of size " + matrix.length);
+
+        final double[] toBeRaised = createRangeArray(20_000_000);
+        WorkSpan.measure(() -> WithCompletableFutures.parallelLoop(
+            forkJoinPool,
+            toBeRaised.length,
+            nThreads,
+            i -> toBeRaised[i] = Math.pow(toBeRaised[i], Math.PI)
+        )).print("parallelLoop of size " + toBeRaised.length);
+    }
+
+    /**
+     * {@link lectures.Lecture2_2.ReciprocalArraySumTask} with its forks and
+     * joins recorded, kept apart so that the lecture pays no instrumentation.
+     */
+    static class ReciprocalArraySumTask extends InstrumentedRecursiveTask<Double> {
+
+        private static final int SEQUENTIAL_THRESHOLD = 1000;
+
+        private final double[] inputs;
+
+        private final int startIndexInclusive;
+
+        private final int endIndexExclusive;
+
+        ReciprocalArraySumTask(
+            final double[] inputs,
+            final int startIndexInclusive,
+            final int endIndexExclusive
+        ) {
+            this.inputs = inputs;
+            this.startIndexInclusive = startIndexInclusive;
+            this.endIndexExclusive = endIndexExclusive;
+        }
+
+        @Override
+        protected Double computeInstrumented() {
+            if (endIndexExclusive - startIndexInclusive <= SEQUENTIAL_THRESHOLD)
+                return sequentialReciprocalArraySum(inputs, startIndexInclusive, endIndexExclusive);
+            final int mid = (startIndexInclusive + endIndexExclusive) / 2;
+            final ReciprocalArraySumTask left = new ReciprocalArraySumTask(inputs, startIndexInclusive, mid);
+            final ReciprocalArraySumTask right = new ReciprocalArraySumTask(inputs, mid, endIndexExclusive);
+            spawn(left);
+            return right.compute() + sync(left);
+        }
+    }
+
+    /**
+     * {@link lectures.Lecture3_2B.MatrixMultiplication}, one task per cell,
+     * with its forks and joins recorded.
+     */
+    static class MatrixMultiplication extends InstrumentedRecursiveAction {
+
+        private final double[][] A, B, C;
+
+        private final int i, j;
+
+        private final boolean root;
+
+        MatrixMultiplication(final double[][] A, final double[][] B, final double[][] C) {
+            this(A, B, 0, 0, C, true);
+        }
+
+        private MatrixMultiplication(
+            final double[][] A,
+            final double[][] B,
+            final int i,
+            final int j,
+            final double[][] C,
+            final boolean root
+        ) {
+            this.A = A;
+            this.B = B;
+            this.i = i;
+            this.j = j;
+            this.C = C;
+            this.root = root;
+        }
+
+        @Override
+        protected void computeInstrumented() {
+            if (!root) {
+                computeMatrixCell(A, B, i, j, C);
+                return;
+            }
+            final int height = heightOf(A);
+            final int width = widthOf(B);
+            final MatrixMultiplication[] tasks = new MatrixMultiplication[height * width];
+            int counter = 0;
+            for (int i = 0; i < height; i++)
+                for (int j = 0; j < width; j++)
+                    tasks[counter++] = new MatrixMultiplication(A, B, i, j, C, false);
+            spawnAndSyncAll(tasks);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package lectures;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
+import tools.ComputeRuntime;
+import tools.DoubleArray;
+import tools.EvaluationTools;
+import tools.ExecutionStrategy;
+import tools.StripedAccumulator;
+import tools.VectorKernels;
+
 import static tools.EvaluationTools.*;
 
 public class Lecture2_1 {
@@ -18,7 +27,12 @@ public class Lecture2_1 {
 //        03 - At     440.918ms parallel speed is  184.59%
 //        04 - At     822.447ms parallel speed is  198.83%
 //        05 - At    1643.016ms parallel speed is  198.73%
-    public static void main(String[] args) { // -ea -Xms4g -Xmx4g
+    public static void main(String[] args) { // -ea -Xms4g -Xmx4g --add-modules jdk.incubator.vector
+        if (args.length > 0) {
+            // a length, and optionally a file to map: 10000000000 /tmp/range.bin
+            runOffHeap(ComputeRuntime.shared(), Long.parseLong(args[0]), args.length > 1 ? Path.of(args[1]) : null);
+            return;
+        }
         final int nThreads = Runtime.getRuntime().availableProcessors();
         final int scale = 20_000_000;
         final int nIterations = 1;
@@ -30,6 +44,7 @@ public class Lecture2_1 {
             averageResults(() -> run(16 * scale, nThreads), nIterations)
         );
         printNumberOfThreads(nThreads);
+        ComputeRuntime.shared(nThreads).printStartup();
         printEvaluationResults(resultTuples);
     }
 
@@ -38,37 +53,146 @@ public class Lecture2_1 {
      * @return ratio of the two elapsed times.
      */
     public static ResultTuple<Double> run(final int size, final int nThreads) {
-        final ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
-        final double[] doubles = createRangeArray(size);
+        return run(ComputeRuntime.shared(nThreads), size);
+    }
 
-        final ResultTuple<Double> resultTuple = evaluateBoth(
+    public static ResultTuple<Double> run(final ComputeRuntime runtime, final int size) {
+        final ExecutorService executorService = runtime.executor();
+        final int nThreads = runtime.parallelism;
+        final double[] doubles = createRangeArray(runtime.forkJoinPool(), size);
+
+        final ResultTuple<Double> resultTuple = evaluateAll(
             "Sequential", size, () -> sequentialReciprocalArraySum(doubles, 0, doubles.length),
-            "Parallel", size, () -> {
-                final int nChunks = nThreads;
-                final int chunkSize = doubles.length / nChunks;
-                final List<Future<Double>> futures = new ArrayList<>();
-                for (int i = 0; i < nChunks; i++) {
-                    final int chunkNumber = i;
-                    final Future<Double> future = executorService.submit(() ->
-                        sequentialReciprocalArraySum(
-                            doubles,
-                            chunkSize * chunkNumber,
-                            chunkSize * (chunkNumber + 1)
-                        )
-                    );
-                    futures.add(future);
-                }
-                double result2 = 0;
-                try {
-                    for (Future<Double> f : futures) result2 += f.get();
-                    return result2;
-                } catch (ExecutionException | InterruptedException exc) {
-                    throw new RuntimeException(exc);
-                }
-            }
+            "Parallel", size, () -> parallelReciprocalArraySum(executorService, doubles, nThreads),
+            "Parallel SIMD", size, () -> parallelArraySum(
+                executorService, doubles, nThreads, VectorKernels::reciprocalArraySum
+            )
         );
 
-        executorService.shutdown();
         return resultTuple;
     }
+
+    /**
+     * The reciprocal sum of the range on a {@link DoubleArray} of any
+     * length, in direct memory or mapped onto the file, checked against
+     * the asymptotic expansion of the harmonic number.
+     */
+    public static void runOffHeap(final ComputeRuntime runtime, final long size, final Path file) {
+        if (size < 1000) throw new IllegalArgumentException("size < 1000");
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        try (DoubleArray inputs = file == null ? DoubleArray.allocateDirect(size) : DoubleArray.map(file, size)) {
+            inputs.fill(forkJoinPool, i -> i + 1.0);
+            final long start = System.nanoTime();
+            final double sum = inputs.reciprocalSum(forkJoinPool);
+            final long time = System.nanoTime() - start;
+            final double n = size;
+            final double expected = Math.log(n) + 0.5772156649015329 + 1 / (2 * n) - 1 / (12 * n * n);
+            if (Math.abs(sum - expected) > 1e-8 * expected)
+                throw new RuntimeException("Inconsistent output! " + sum + " != " + expected);
+            printNumberOfThreads(runtime.parallelism);
+            runtime.printStartup();
+            printer().printf("Off-heap reciprocal sum of size %,d - elapsed time: %.4fms%n", size, time / 1e6);
+        }
+    }
+
+    public static double parallelReciprocalArraySum(
+        final ExecutorService executorService,
+        final double[] inputs,
+        final int nChunks
+    ) {
+        return parallelArraySum(executorService, inputs, nChunks, EvaluationTools::sequentialReciprocalArraySum);
+    }
+
+    /**
+     * Sum of a sub array, such as {@link EvaluationTools#sequentialReciprocalArraySum}.
+     */
+    @FunctionalInterface
+    public interface RangeSum {
+        double sum(double[] inputs, int startIndexInclusive, int endIndexExclusive);
+    }
+
+    /**
+     * Split the inputs in nChunks chunks, as {@link EvaluationTools#getChunkStartInclusive}
+     * does, submit one range sum per chunk and combine the partial results
+     * in order.
+     *
+     * @param executorService The executor that runs the chunks.
+     * @param inputs          The array with values to be summed.
+     * @param nChunks         The number of chunks to submit.
+     * @param rangeSum        The sum of one chunk.
+     * @return The sum of the inputs.
+     */
+    public static double parallelArraySum(
+        final ExecutorService executorService,
+        final double[] inputs,
+        final int nChunks,
+        final RangeSum rangeSum
+    ) {
+        final List<Future<Double>> futures = new ArrayList<>();
+        for (int i = 0; i < nChunks; i++) {
+            final int end = getChunkEndExclusive(i, nChunks, inputs.length);
+            final int start = Math.min(getChunkStartInclusive(i, nChunks, inputs.length), end);
+            final Future<Double> future = executorService.submit(() ->
+                rangeSum.sum(inputs, start, end)
+            );
+            futures.add(future);
+        }
+        double result = 0;
+        try {
+            for (Future<Double> f : futures) result += f.get();
+            return result;
+        } catch (ExecutionException | InterruptedException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    /**
+     * Same as {@link #parallelArraySum(ExecutorService, double[], int, RangeSum)}
+     * with every chunk adding its partial sum to its own slot of a striped
+     * accumulator instead of returning it; the futures only tell when the
+     * chunks are done. The slots are summed in chunk order, as the futures
+     * are, so both return the same sum.
+     */
+    public static double accumulatedArraySum(
+        final ExecutorService executorService,
+        final double[] inputs,
+        final int nChunks,
+        final RangeSum rangeSum
+    ) {
+        final StripedAccumulator.OfDouble accumulator = new StripedAccumulator.OfDouble(nChunks);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < nChunks; i++) {
+            final int chunkNumber = i;
+            final int end = getChunkEndExclusive(i, nChunks, inputs.length);
+            final int start = Math.min(getChunkStartInclusive(i, nChunks, inputs.length), end);
+            futures.add(executorService.submit(() -> accumulator.add(chunkNumber, rangeSum.sum(inputs, start, end))));
+        }
+        try {
+            for (Future<?> f : futures) f.get();
+            return accumulator.sum();
+        } catch (ExecutionException | InterruptedException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    /**
+     * Same as {@link #parallelArraySum(ExecutorService, double[], int, RangeSum)}
+     * with the chunks spawned and joined by the strategy.
+     */
+    public static double parallelArraySum(
+        final ExecutionStrategy strategy,
+        final double[] inputs,
+        final int nChunks,
+        final RangeSum rangeSum
+    ) {
+        final List<Callable<Double>> tasks = new ArrayList<>(nChunks);
+        for (int i = 0; i < nChunks; i++) {
+            final int end = getChunkEndExclusive(i, nChunks, inputs.length);
+            final int start = Math.min(getChunkStartInclusive(i, nChunks, inputs.length), end);
+            tasks.add(() -> rangeSum.sum(inputs, start, end));
+        }
+        double result = 0;
+        for (double partial : strategy.invokeAll(tasks)) result += partial;
+        return result;
+    }
 }
@@ -5,7 +5,12 @@ import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
 
+import tools.ComputeRuntime;
+import tools.DeterministicSum;
+import tools.GoldenResults;
+
 import static tools.EvaluationTools.*;
+import static tools.ParallelReduction.reduce;
 
 public class Lecture2_2 {
 //    number of processors available: 4
@@ -26,19 +31,30 @@ public class Lecture2_2 {
             averageResults(() -> run(16 * scale, nThreads), nIterations)
         );
         printNumberOfThreads(nThreads);
+        ComputeRuntime.shared(nThreads).printStartup();
         printEvaluationResults(resultTuples);
     }
 
     public static ResultTuple<Double> run(int size, final int parallelism) {
-        final double[] inputs = createRangeArray(size);
-        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        return run(ComputeRuntime.shared(parallelism), size);
+    }
 
-        ResultTuple<Double> resultTuple = evaluateBoth(
+    public static ResultTuple<Double> run(final ComputeRuntime runtime, final int size) {
+        final double[] inputs = createRangeArray(runtime.forkJoinPool(), size);
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+
+        ResultTuple<Double> resultTuple = evaluateAll(
             "Sequential", size, () -> sequentialReciprocalArraySum(inputs, 0, inputs.length),
-            "Parallel", size, () -> forkJoinPool.invoke(new ReciprocalArraySumTask(inputs, 0, inputs.length))
+            "Parallel", size, () -> reduce(forkJoinPool, inputs, 0, inputs.length, 0, x -> 1 / x, Double::sum),
+            "Deterministic", size, () -> DeterministicSum.reciprocalSum(forkJoinPool, inputs, true)
+        );
+        GoldenResults.check(
+            "reciprocal sum", size, resultTuple.C.result,
+            () -> DeterministicSum.sequentialSum(inputs, 0, inputs.length, x -> 1 / x, true)
         );
+        if (Math.abs(resultTuple.C.result - resultTuple.A.result) > 1e-9 * Math.abs(resultTuple.A.result))
+            throw new RuntimeException("Inconsistent output!");
 
-        forkJoinPool.shutdown();
         return resultTuple;
     }
 
@@ -4,10 +4,14 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import tools.ComputeRuntime;
+import tools.PrimeSieve;
+
 import static tools.EvaluationTools.*;
 
 public class Lecture2_3 {
 
+//    Trial division with parallel streams, up to 2,560,000:
 //    number of processors available: 4
 //        01 - At      17.818ms parallel speed is  159.04%
 //        02 - At      18.425ms parallel speed is  207.09%
@@ -18,7 +22,7 @@ public class Lecture2_3 {
 //        07 - At    1665.374ms parallel speed is  194.97%
     public static void main(String[] args) { // -ea -Xms4g -Xmx4g
         final int nThreads = Runtime.getRuntime().availableProcessors();
-        final int scale = 40_000;
+        final int scale = 16_000_000;
         final int nIterations = 3;
         List<ResultTuple<Double>> resultTuples = Arrays.asList(
             averageResults(() -> run(1 * scale), nIterations),
@@ -30,29 +34,43 @@ public class Lecture2_3 {
             averageResults(() -> run(64 * scale), nIterations)
         );
         printNumberOfThreads(nThreads);
+        ComputeRuntime.shared(nThreads).printStartup();
         printEvaluationResults(resultTuples);
     }
 
     public static ResultTuple<Double> run(int size) {
+        return run(ComputeRuntime.shared(), size);
+    }
+
+    public static ResultTuple<Double> run(final ComputeRuntime runtime, final int size) {
         ResultTuple<Double> output = evaluateBoth(
-            "Sequential", size, () -> IntStream
-                .range(1, size)
-                .filter(i -> isPrime(i))
-                .mapToDouble(i -> 1.0 / i)
-                .reduce(0, (a, b) -> a + b),
-            "Parallel", size, () -> IntStream
-                .range(1, size)
-                .parallel()
-                .filter(i -> isPrime(i))
-                .mapToDouble(i -> 1.0 / i)
-                .reduce(0, (a, b) -> a + b)
+            "Sequential", size, () -> PrimeSieve.sequentialReciprocalSum(size),
+            "Parallel", size, () -> PrimeSieve.reciprocalSum(runtime.forkJoinPool(), size)
         );
         return output;
     }
 
+    public static double sequentialPrimeReciprocalSum(final int size) {
+        return IntStream
+            .range(1, size)
+            .filter(i -> isPrime(i))
+            .mapToDouble(i -> 1.0 / i)
+            .reduce(0, (a, b) -> a + b);
+    }
+
+    public static double parallelPrimeReciprocalSum(final int size) {
+        return IntStream
+            .range(1, size)
+            .parallel()
+            .filter(i -> isPrime(i))
+            .mapToDouble(i -> 1.0 / i)
+            .reduce(0, (a, b) -> a + b);
+    }
+
     public static boolean isPrime(int i) {
         if (i <= 1) return false;
-        for (int j = 2; j <= Math.sqrt(i); j++) if (i % j == 0) return false;
+        final int root = (int) Math.sqrt(i);
+        for (int j = 2; j <= root; j++) if (i % j == 0) return false;
         return true;
     }
 }
@@ -4,6 +4,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import tools.ComputeRuntime;
+
 import static tools.EvaluationTools.*;
 import static tools.MatrixTools.*;
 
@@ -27,29 +29,50 @@ public class Lecture3_2A {
             averageResults(() -> run(16 * scale), nIterations)
         );
         printNumberOfThreads(nThreads);
+        ComputeRuntime.shared(nThreads).printStartup();
         printEvaluationResults(resultTuples);
     }
 
     public static ResultTuple<double[][]> run(final int size) {
-        final double[][] inputs = createRangeSquareMatrix(size);
+        return run(ComputeRuntime.shared(), size);
+    }
+
+    /**
+     * The parallel streams run in the fork join pool of the runtime.
+     */
+    public static ResultTuple<double[][]> run(final ComputeRuntime runtime, final int size) {
+        final double[][] inputs = createRangeMatrix(runtime.forkJoinPool(), size, size);
 
         final ResultTuple<double[][]> resultTuple = evaluateBoth(
             "Sequential", size, () -> productOf(inputs, inputs),
-            "Parallel", size, () -> {
-                final double[][] output = resultMatrixOf(inputs, inputs);
-                IntStream.range(0, heightOf(output))
-                    .parallel()
-                    .forEach(i -> IntStream.range(0, widthOf(output))
-                        .parallel()
-                        .forEach(j -> computeMatrixCell(inputs, inputs, i, j, output))
-                    );
-                return output;
-            }
+            "Parallel", size, () -> runtime.inForkJoinPool(() -> parallelProductOf(inputs, inputs))
         );
-        if (!matrixEquals(resultTuple.A.result, resultTuple.B.result))
+        if (!freivaldsCheck(runtime.forkJoinPool(), inputs, inputs, resultTuple.B.result))
             throw new RuntimeException("Inconsistent output!");
 
         return resultTuple;
     }
 
+    /**
+     * Compute the product of two matrices with one nested parallel stream
+     * over the rows and the columns of the result.
+     *
+     * @param A First factor.
+     * @param B Second factor.
+     * @return The product of the two matrices.
+     */
+    public static double[][] parallelProductOf(
+        final double[][] A,
+        final double[][] B
+    ) {
+        final double[][] output = resultMatrixOf(A, B);
+        IntStream.range(0, heightOf(output))
+            .parallel()
+            .forEach(i -> IntStream.range(0, widthOf(output))
+                .parallel()
+                .forEach(j -> computeMatrixCell(A, B, i, j, output))
+            );
+        return output;
+    }
+
 }
@@ -5,6 +5,8 @@ import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 
+import tools.ComputeRuntime;
+
 import static tools.EvaluationTools.*;
 import static tools.MatrixTools.*;
 
@@ -28,37 +30,48 @@ public class Lecture3_2B {
             averageResults(() -> run(16 * scale), nIterations)
         );
         printNumberOfThreads(nThreads);
+        ComputeRuntime.shared(nThreads).printStartup();
         printEvaluationResults(resultTuples);
     }
 
     public static ResultTuple<double[][]> run(final int size) {
-        final int availableProcessors = Runtime.getRuntime().availableProcessors();
-        final ForkJoinPool forkJoinPool = new ForkJoinPool(availableProcessors);
-        final double[][] inputs = createRangeSquareMatrix(size);
+        return run(ComputeRuntime.shared(), size);
+    }
+
+    public static ResultTuple<double[][]> run(final ComputeRuntime runtime, final int size) {
+        final ForkJoinPool forkJoinPool = runtime.forkJoinPool();
+        final double[][] inputs = createRangeMatrix(runtime.forkJoinPool(), size, size);
         ResultTuple<double[][]> resultTuple = evaluateBoth(
             "sequential", size, () -> {
                 final double[][] output = productOf(inputs, inputs);
                 return output;
             },
-            "parallel", size, () -> {
-                final double[][] output = resultMatrixOf(inputs, inputs);
-                final MatrixMultiplication matrixMultiplication = new MatrixMultiplication(
-                    inputs,
-                    inputs,
-                    output,
-                    availableProcessors
-                );
-                forkJoinPool.invoke(matrixMultiplication);
-                return output;
-            }
+            "parallel", size, () -> parallelProductOf(forkJoinPool, inputs, inputs)
         );
-        if (!matrixEquals(resultTuple.A.result, resultTuple.A.result))
+        if (!freivaldsCheck(forkJoinPool, inputs, inputs, resultTuple.B.result))
             throw new RuntimeException("Inconsistent output!");
-        forkJoinPool.shutdown();
 //        printMatrix(output);
         return resultTuple;
     }
 
+    /**
+     * Compute the product of two matrices with one task per cell of the result.
+     *
+     * @param forkJoinPool The pool that runs the tasks.
+     * @param A            First factor.
+     * @param B            Second factor.
+     * @return The product of the two matrices.
+     */
+    public static double[][] parallelProductOf(
+        final ForkJoinPool forkJoinPool,
+        final double[][] A,
+        final double[][] B
+    ) {
+        final double[][] output = resultMatrixOf(A, B);
+        forkJoinPool.invoke(new MatrixMultiplication(A, B, output, forkJoinPool.getParallelism()));
+        return output;
+    }
+
     public static class MatrixMultiplication extends RecursiveAction {
 
         private final double[][] A, B, C;
@@ -1,62 +1,188 @@
 package lectures;
 
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Phaser;
-import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import tools.ComputeRuntime;
+import tools.DoubleArray;
+import tools.PhasedExecutor;
+import tools.PhasedExecutor.Phase;
+import tools.PhasedExecutor.PhaseTimings;
+import tools.VectorKernels;
 
 import static tools.EvaluationTools.*;
 
 public class Lecture4_1 {
 
-    public static void main(String[] args) {
-        run(250_000_000);
+    /**
+     * Without arguments, the kernels on a heap array; with a length, and
+     * optionally a file to map, the kernel on a {@link DoubleArray}, e.g.
+     * 10000000000 /tmp/kernel.bin for 10^10 elements on 80GB of disk.
+     */
+    public static void main(String[] args) { // -ea -Xms6g -Xmx6g --add-modules jdk.incubator.vector
+        if (args.length == 0) run(250_000_000);
+        else runOffHeap(ComputeRuntime.shared(), Long.parseLong(args[0]), args.length > 1 ? Path.of(args[1]) : null);
     }
 
     public static ResultTuple<double[]> run(final int size) {
-        final int nTasks = Runtime.getRuntime().availableProcessors();
-        final ResultTuple<double[]> resultTuple = evaluateBoth(
-            "Sequential", size, () -> {
-                final double[] output = createRangeArray(size);
-                for (int j = 0; j < output.length; j++)
+        return run(ComputeRuntime.shared(), size);
+    }
+
+    /**
+     * Every evaluation overwrites the whole array it is given, so the
+     * sequential kernel runs on the reference array and both parallel
+     * kernels on one other array, checked against the reference after each
+     * evaluation: two arrays of the size are alive at any time. The results
+     * of both parallel evaluations are that array, equal to the reference.
+     */
+    public static ResultTuple<double[]> run(final ComputeRuntime runtime, final int size) {
+        final PhasedExecutor phasedExecutor = runtime.phasedExecutor();
+        final PhaseTimings[] timings = new PhaseTimings[1];
+        final double[] reference = new double[size];
+        final EvaluationResult<double[]> sequential = evaluate(
+            "Sequential", size, () -> reference, Lecture4_1::sequentialKernel
+        );
+        final double[] array = new double[size];
+        final EvaluationResult<double[]> parallel = evaluate("Parallel", size, () -> array, output -> {
+            timings[0] = parallelKernel(phasedExecutor, output);
+            return output;
+        });
+        checkOutput(reference, parallel.result);
+        final EvaluationResult<double[]> vector = evaluate("Parallel SIMD", size, () -> array, output -> {
+            parallelVectorKernel(phasedExecutor, output);
+            return output;
+        });
+        checkOutput(reference, vector.result);
+        final ResultTuple<double[]> resultTuple = compareResults(sequential, parallel, vector);
+        timings[0].print();
+        return resultTuple;
+    }
+
+    private static void checkOutput(final double[] reference, final double[] output) {
+        for (int i = 0; i < reference.length; i++)
+            if (reference[i] != output[i]) throw new RuntimeException("Inconsistent outputs");
+    }
+
+    /**
+     * The kernel on an off-heap array of any length, in direct memory or
+     * mapped onto the file, checked on a thousand elements against the
+     * kernel of one value.
+     */
+    public static void runOffHeap(final ComputeRuntime runtime, final long size, final Path file) {
+        try (DoubleArray output = file == null ? DoubleArray.allocateDirect(size) : DoubleArray.map(file, size)) {
+            final long start = System.nanoTime();
+            offHeapKernel(runtime.forkJoinPool(), output);
+            final long time = System.nanoTime() - start;
+            for (long j = 0; j < size; j += Math.max(1, size / 1000))
+                if (output.get(j) != kernelOf(j + 1.0)) throw new RuntimeException("Inconsistent outputs");
+            printNumberOfThreads(runtime.parallelism);
+            runtime.printStartup();
+            printer().printf("Off-heap kernel of size %,d - elapsed time: %.4fms%n", size, time / 1e6);
+        }
+    }
+
+    /**
+     * The two phases of the kernel as two parallel loops over the chunks
+     * of the array.
+     */
+    public static DoubleArray offHeapKernel(final ForkJoinPool forkJoinPool, final DoubleArray output) {
+        output.fill(forkJoinPool, j -> j + 1.0);
+        output.map(forkJoinPool, Lecture4_1::kernelOf);
+        return output;
+    }
+
+    private static double kernelOf(double x) {
+        for (int k = 0; k < 20; k++) x = x * x / 2.0;
+        return x;
+    }
+
+    public static double[] sequentialKernel(final int size) {
+        return sequentialKernel(new double[size]);
+    }
+
+    /**
+     * Fill the array with the range and run the kernel on it, the work of
+     * both phases of the parallel kernels.
+     */
+    public static double[] sequentialKernel(final double[] output) {
+        for (int j = 0; j < output.length; j++) output[j] = j + 1.0;
+        for (int j = 0; j < output.length; j++)
+            for (int k = 0; k < 20; k++)
+                output[j] = output[j] * output[j] / 2.0;
+        return output;
+    }
+
+    public static double[] parallelKernel(final int size, final int nTasks) {
+        final double[] output = new double[size];
+        inPhases(nTasks,
+            i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                for (int j = start; j < end; j++) output[j] = j + 1.0;
+            },
+            i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                for (int j = start; j < end; j++)
                     for (int k = 0; k < 20; k++)
                         output[j] = output[j] * output[j] / 2.0;
-                return output;
-            },
-            "Parallel", size, () -> {
-                final double[] output = new double[size];
-                inPhases(nTasks,
-                    i -> {
-                        final int start = i * output.length / nTasks;
-                        final int end = (i + 1) * output.length / nTasks;
-                        System.out.println(
-                            "PHASE A " + i + " - start: " + start + " - end: " + end +
-                                " - Thread: " + Thread.currentThread().getName()
-                        );
-                        for (int j = start; j < end; j++) output[j] = j + 1.0;
-                    },
-                    i -> {
-                        final int start = i * output.length / nTasks;
-                        final int end = (i + 1) * output.length / nTasks;
-                        System.out.println(
-                            "PHASE B " + i + " - start: " + start + " - end: " + end +
-                            " - Thread: " + Thread.currentThread().getName()
-                        );
-                        for (int j = start; j < end; j++)
-                            for (int k = 0; k < 20; k++)
-                                output[j] = output[j] * output[j] / 2.0;
-                    }
-                );
-                return output;
             }
         );
-        for (int i = 0; i < resultTuple.A.result.length; i++)
-            if (resultTuple.A.result[i] != resultTuple.B.result[i])
-                throw new RuntimeException("Inconsistent outputs");
-        return resultTuple;
+        return output;
+    }
+
+    /**
+     * Same kernel as {@link #parallelKernel(int, int)} on persistent workers,
+     * with the same two phases and the barrier between them.
+     */
+    public static PhaseTimings parallelKernel(
+        final PhasedExecutor phasedExecutor,
+        final double[] output
+    ) {
+        final int nTasks = phasedExecutor.numberOfWorkers();
+        return phasedExecutor.run(
+            Phase.of(i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                for (int j = start; j < end; j++) output[j] = j + 1.0;
+            }),
+            Phase.of(i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                for (int j = start; j < end; j++)
+                    for (int k = 0; k < 20; k++)
+                        output[j] = output[j] * output[j] / 2.0;
+            })
+        );
+    }
+
+    /**
+     * Same as {@link #parallelKernel(PhasedExecutor, double[])} with the
+     * repeated squares in SIMD lanes.
+     */
+    public static PhaseTimings parallelVectorKernel(
+        final PhasedExecutor phasedExecutor,
+        final double[] output
+    ) {
+        final int nTasks = phasedExecutor.numberOfWorkers();
+        return phasedExecutor.run(
+            Phase.of(i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                for (int j = start; j < end; j++) output[j] = j + 1.0;
+            }),
+            Phase.of(i -> {
+                final int end = getChunkEndExclusive(i, nTasks, output.length);
+                final int start = Math.min(getChunkStartInclusive(i, nTasks, output.length), end);
+                VectorKernels.repeatedSquareHalf(output, start, end, 20);
+            })
+        );
     }
 
-    @SafeVarargs
-    public static void inPhases(final int n, final Consumer<Integer>... phases) {
+    public static void inPhases(final int n, final IntConsumer... phases) {
         assert n > 0;
         final Phaser phaser = new Phaser(n);
         inPhases0(0, n, phaser, phases);
@@ -66,7 +192,7 @@ public class Lecture4_1 {
         final int index,
         final int n,
         final Phaser phaser,
-        final Consumer<Integer>[] phases
+        final IntConsumer[] phases
     ) {
         if (index >= n) return;
         final int nextIndex = index + 1;
@@ -0,0 +1,200 @@
+package tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static tools.EvaluationTools.printer;
+
+/**
+ * The pools the workloads run on, created and warmed up once instead of
+ * inside every measured run. A runtime owns a fork join pool, a fixed
+ * thread pool and a {@link PhasedExecutor} of the same parallelism, whose
+ * threads are named after the runtime.
+ * <p>
+ * The constructor returns after a warm-up handshake: every thread of every
+ * pool has run a task and met the others, so no thread is created during a
+ * measurement. The time this takes is kept as {@link #startupTime}, to be
+ * reported apart from the measured times.
+ * <p>
+ * {@link #shared(int)} keeps one runtime per parallelism for the life of
+ * the process; they are closed by a shutdown hook.
+ */
+public final class ComputeRuntime implements AutoCloseable {
+
+    /**
+     * How long the handshake and the orderly shutdown wait for the threads.
+     */
+    public static final long TIMEOUT_SECONDS = 30;
+
+    private static final Map<Integer, ComputeRuntime> SHARED = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ComputeRuntime::closeShared, "compute-runtime-shutdown"));
+    }
+
+    public final String name;
+    public final int parallelism;
+
+    /**
+     * Nanoseconds from the creation of the pools to the end of the warm-up
+     * handshake.
+     */
+    public final long startupTime;
+
+    private final ForkJoinPool forkJoinPool;
+    private final ThreadPoolExecutor executor;
+    private final PhasedExecutor phasedExecutor;
+    private volatile boolean closed;
+
+    /**
+     * @param name        The prefix of the thread names.
+     * @param parallelism The number of threads of each pool.
+     */
+    public ComputeRuntime(final String name, final int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+        final long start = System.nanoTime();
+        this.name = name;
+        this.parallelism = parallelism;
+        final AtomicInteger forkJoinThreads = new AtomicInteger();
+        this.forkJoinPool = new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-fork-join-" + forkJoinThreads.getAndIncrement());
+            return thread;
+        }, null, false);
+        final AtomicInteger executorThreads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            parallelism, parallelism, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable, name + "-executor-" + executorThreads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.executor.prestartAllCoreThreads();
+        this.phasedExecutor = new PhasedExecutor(name, parallelism);
+        handshake();
+        this.startupTime = System.nanoTime() - start;
+    }
+
+    public ComputeRuntime(final int parallelism) {
+        this("compute-" + COUNTER.getAndIncrement(), parallelism);
+    }
+
+    /**
+     * @return The runtime of this parallelism shared by the whole process,
+     *         created on first use.
+     */
+    public static ComputeRuntime shared(final int parallelism) {
+        return SHARED.computeIfAbsent(parallelism, p -> new ComputeRuntime("compute-" + p, p));
+    }
+
+    /**
+     * @return The shared runtime with one thread per available processor.
+     */
+    public static ComputeRuntime shared() {
+        return shared(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Close the shared runtimes; the next call to {@link #shared} creates
+     * new ones.
+     */
+    public static void closeShared() {
+        for (Integer parallelism : SHARED.keySet()) {
+            final ComputeRuntime runtime = SHARED.remove(parallelism);
+            if (runtime != null) runtime.close();
+        }
+    }
+
+    public ForkJoinPool forkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public PhasedExecutor phasedExecutor() {
+        return phasedExecutor;
+    }
+
+    /**
+     * Run a computation from a worker of the fork join pool, so that the
+     * parallel streams it starts use this pool rather than the common one.
+     */
+    public <T> T inForkJoinPool(final Supplier<T> computation) {
+        return forkJoinPool.submit(computation::get).join();
+    }
+
+    /**
+     * Every thread runs one task that waits until the tasks of the other
+     * threads of its pool have started: one thread cannot run two of them,
+     * so all the threads exist and have run when the latch opens.
+     */
+    private void handshake() {
+        final CountDownLatch forkJoinStarted = new CountDownLatch(parallelism);
+        final CountDownLatch executorStarted = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            forkJoinPool.execute(() -> meet(forkJoinStarted));
+            executor.execute(() -> meet(executorStarted));
+        }
+        await(forkJoinStarted);
+        await(executorStarted);
+        phasedExecutor.run(i -> {});
+    }
+
+    private static void meet(final CountDownLatch started) {
+        started.countDown();
+        await(started);
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                throw new RuntimeException("The threads of the runtime did not start in time");
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exc);
+        }
+    }
+
+    public void printStartup() {
+        printer().printf(
+            "%s - %d threads per pool - startup time: %4.4fms%n",
+            name, parallelism, startupTime / 1e6
+        );
+    }
+
+    /**
+     * Let the pools finish the tasks already submitted, then stop their
+     * threads; the ones still running after {@link #TIMEOUT_SECONDS} are
+     * interrupted.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        SHARED.remove(parallelism, this);
+        forkJoinPool.shutdown();
+        executor.shutdown();
+        phasedExecutor.close();
+        try {
+            if (!forkJoinPool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)) forkJoinPool.shutdownNow();
+            if (!executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException exc) {
+            forkJoinPool.shutdownNow();
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
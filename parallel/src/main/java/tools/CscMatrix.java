@@ -0,0 +1,73 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * A sparse matrix in compressed sparse column format: the nonzeros of
+ * column j are values[columnPointers[j] .. columnPointers[j + 1]), in
+ * increasing row order, with their rows in rowIndexes. Its arrays are the
+ * {@link CsrMatrix} arrays of the transpose.
+ */
+public final class CscMatrix {
+
+    public final int height;
+    public final int width;
+    public final int[] columnPointers;
+    public final int[] rowIndexes;
+    public final double[] values;
+
+    public CscMatrix(
+        final int height,
+        final int width,
+        final int[] columnPointers,
+        final int[] rowIndexes,
+        final double[] values
+    ) {
+        if (height < 0 || width < 0) throw new IllegalArgumentException("Negative dimensions");
+        if (columnPointers.length != width + 1 || columnPointers[0] != 0)
+            throw new IllegalArgumentException("columnPointers must have width + 1 entries starting at 0");
+        if (rowIndexes.length != values.length || columnPointers[width] != values.length)
+            throw new IllegalArgumentException("Inconsistent number of nonzeros");
+        this.height = height;
+        this.width = width;
+        this.columnPointers = columnPointers;
+        this.rowIndexes = rowIndexes;
+        this.values = values;
+    }
+
+    public static CscMatrix of(final double[][] matrix) {
+        return CsrMatrix.of(matrix).toCsc();
+    }
+
+    public int numberOfNonZeros() {
+        return values.length;
+    }
+
+    public double get(final int i, final int j) {
+        final int k = Arrays.binarySearch(rowIndexes, columnPointers[j], columnPointers[j + 1], i);
+        return k < 0 ? 0 : values[k];
+    }
+
+    public double[][] toArray() {
+        final double[][] output = new double[height][width];
+        for (int j = 0; j < width; j++)
+            for (int k = columnPointers[j]; k < columnPointers[j + 1]; k++)
+                output[rowIndexes[k]][j] = values[k];
+        return output;
+    }
+
+    /**
+     * @return The transpose in CSR format, sharing the same arrays.
+     */
+    public CsrMatrix transpose() {
+        return new CsrMatrix(width, height, columnPointers, rowIndexes, values);
+    }
+
+    public CsrMatrix toCsr() {
+        final CscMatrix transposeByColumns = transpose().toCsc();
+        return new CsrMatrix(
+            height, width,
+            transposeByColumns.columnPointers, transposeByColumns.rowIndexes, transposeByColumns.values
+        );
+    }
+}
@@ -0,0 +1,226 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A sparse matrix in compressed sparse row format: the nonzeros of row i
+ * are values[rowPointers[i] .. rowPointers[i + 1]), in increasing column
+ * order, with their columns in columnIndexes. Memory is proportional to
+ * the number of nonzeros plus the height.
+ */
+public final class CsrMatrix {
+
+    public final int height;
+    public final int width;
+    public final int[] rowPointers;
+    public final int[] columnIndexes;
+    public final double[] values;
+
+    public CsrMatrix(
+        final int height,
+        final int width,
+        final int[] rowPointers,
+        final int[] columnIndexes,
+        final double[] values
+    ) {
+        if (height < 0 || width < 0) throw new IllegalArgumentException("Negative dimensions");
+        if (rowPointers.length != height + 1 || rowPointers[0] != 0)
+            throw new IllegalArgumentException("rowPointers must have height + 1 entries starting at 0");
+        if (columnIndexes.length != values.length || rowPointers[height] != values.length)
+            throw new IllegalArgumentException("Inconsistent number of nonzeros");
+        this.height = height;
+        this.width = width;
+        this.rowPointers = rowPointers;
+        this.columnIndexes = columnIndexes;
+        this.values = values;
+    }
+
+    /**
+     * Keep the nonzero elements of a dense matrix.
+     */
+    public static CsrMatrix of(final double[][] matrix) {
+        final int height = matrix.length;
+        final int width = height == 0 ? 0 : matrix[0].length;
+        final int[] rowPointers = new int[height + 1];
+        for (int i = 0; i < height; i++) {
+            if (matrix[i].length != width) throw new IllegalArgumentException("Ragged matrix");
+            int nonZeros = 0;
+            for (double value : matrix[i]) if (value != 0) nonZeros++;
+            rowPointers[i + 1] = rowPointers[i] + nonZeros;
+        }
+        final int[] columnIndexes = new int[rowPointers[height]];
+        final double[] values = new double[rowPointers[height]];
+        for (int i = 0; i < height; i++) {
+            int k = rowPointers[i];
+            for (int j = 0; j < width; j++)
+                if (matrix[i][j] != 0) {
+                    columnIndexes[k] = j;
+                    values[k++] = matrix[i][j];
+                }
+        }
+        return new CsrMatrix(height, width, rowPointers, columnIndexes, values);
+    }
+
+    /**
+     * A matrix whose elements are nonzero with the given probability, drawn
+     * row by row so that memory and time scale with the nonzeros.
+     *
+     * @param density The expected fraction of nonzero elements.
+     * @param seed    The seed of the random generator.
+     */
+    public static CsrMatrix random(
+        final int height,
+        final int width,
+        final double density,
+        final long seed
+    ) {
+        final Random random = new Random(seed);
+        final Builder builder = new Builder(height, width);
+        final int perRow = (int) Math.round(density * width);
+        for (int i = 0; i < height; i++)
+            for (int k = 0; k < perRow; k++)
+                builder.add(i, random.nextInt(width), 1 + random.nextInt(9));
+        return builder.build();
+    }
+
+    /**
+     * Accumulates (row, column, value) entries in any order; entries with
+     * the same position are summed.
+     */
+    public static final class Builder {
+        private final int height;
+        private final int width;
+        private int[] rows = new int[16];
+        private int[] columns = new int[16];
+        private double[] entries = new double[16];
+        private int size;
+
+        public Builder(final int height, final int width) {
+            if (height < 0 || width < 0) throw new IllegalArgumentException("Negative dimensions");
+            this.height = height;
+            this.width = width;
+        }
+
+        public Builder add(final int i, final int j, final double value) {
+            if (i < 0 || i >= height || j < 0 || j >= width)
+                throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * size);
+                columns = Arrays.copyOf(columns, 2 * size);
+                entries = Arrays.copyOf(entries, 2 * size);
+            }
+            rows[size] = i;
+            columns[size] = j;
+            entries[size++] = value;
+            return this;
+        }
+
+        /**
+         * Bucket the entries by row, then sort and merge every row.
+         */
+        public CsrMatrix build() {
+            final int[] rowPointers = new int[height + 1];
+            for (int k = 0; k < size; k++) rowPointers[rows[k] + 1]++;
+            for (int i = 0; i < height; i++) rowPointers[i + 1] += rowPointers[i];
+            final int[] next = Arrays.copyOf(rowPointers, height);
+            final int[] columnIndexes = new int[size];
+            final double[] values = new double[size];
+            for (int k = 0; k < size; k++) {
+                final int position = next[rows[k]]++;
+                columnIndexes[position] = columns[k];
+                values[position] = entries[k];
+            }
+            final int[] outputPointers = new int[height + 1];
+            int nonZeros = 0;
+            for (int i = 0; i < height; i++) {
+                final int from = rowPointers[i], to = rowPointers[i + 1];
+                sortRow(columnIndexes, values, from, to);
+                for (int k = from; k < to; k++) {
+                    if (nonZeros > outputPointers[i] && columnIndexes[nonZeros - 1] == columnIndexes[k]) {
+                        values[nonZeros - 1] += values[k];
+                    } else {
+                        columnIndexes[nonZeros] = columnIndexes[k];
+                        values[nonZeros++] = values[k];
+                    }
+                }
+                outputPointers[i + 1] = nonZeros;
+            }
+            return new CsrMatrix(
+                height, width, outputPointers,
+                Arrays.copyOf(columnIndexes, nonZeros), Arrays.copyOf(values, nonZeros)
+            );
+        }
+    }
+
+    /**
+     * Insertion sort of the entries [from, to) by column; the rows of a
+     * sparse matrix are short.
+     */
+    private static void sortRow(final int[] columnIndexes, final double[] values, final int from, final int to) {
+        for (int k = from + 1; k < to; k++) {
+            final int column = columnIndexes[k];
+            final double value = values[k];
+            int l = k - 1;
+            while (l >= from && columnIndexes[l] > column) {
+                columnIndexes[l + 1] = columnIndexes[l];
+                values[l + 1] = values[l];
+                l--;
+            }
+            columnIndexes[l + 1] = column;
+            values[l + 1] = value;
+        }
+    }
+
+    public int numberOfNonZeros() {
+        return values.length;
+    }
+
+    public double get(final int i, final int j) {
+        final int k = Arrays.binarySearch(columnIndexes, rowPointers[i], rowPointers[i + 1], j);
+        return k < 0 ? 0 : values[k];
+    }
+
+    /**
+     * @return A dense copy, for {@link MatrixTools#printMatrix} and
+     *         {@link MatrixTools#matrixEquals}.
+     */
+    public double[][] toArray() {
+        final double[][] output = new double[height][width];
+        for (int i = 0; i < height; i++)
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++)
+                output[i][columnIndexes[k]] = values[k];
+        return output;
+    }
+
+    /**
+     * The same matrix by columns, by counting sort on the columns.
+     */
+    public CscMatrix toCsc() {
+        final int[] columnPointers = new int[width + 1];
+        for (int column : columnIndexes) columnPointers[column + 1]++;
+        for (int j = 0; j < width; j++) columnPointers[j + 1] += columnPointers[j];
+        final int[] next = Arrays.copyOf(columnPointers, width);
+        final int[] rowIndexes = new int[values.length];
+        final double[] cscValues = new double[values.length];
+        for (int i = 0; i < height; i++)
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                final int position = next[columnIndexes[k]]++;
+                rowIndexes[position] = i;
+                cscValues[position] = values[k];
+            }
+        return new CscMatrix(height, width, columnPointers, rowIndexes, cscValues);
+    }
+
+    /**
+     * Split the rows in nParts ranges of about the same cost, where the
+     * cost of a row is its number of nonzeros plus one. The cost of the
+     * first i rows is rowPointers[i] + i, so the boundaries are found by
+     * binary search without extra memory.
+     *
+     * @return The nParts + 1 boundaries of the ranges, from 0 to height.
+     */
+    public int[] balancedRowPartition(final int nParts) {
+        return MatrixTools.partitionByCost(height, i -> rowPointers[i] + (long) i, nParts);
+    }
+}
@@ -0,0 +1,152 @@
+package tools;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A matrix of doubles stored row-major in one contiguous array. The
+ * element (i, j) lives at offset + i * rowStride + j, so a sub-matrix is
+ * a view over the same array with a different offset, height and width.
+ */
+public final class DenseMatrix {
+
+    public final double[] data;
+    public final int offset;
+    public final int rowStride;
+    public final int height;
+    public final int width;
+
+    public DenseMatrix(
+        final double[] data,
+        final int offset,
+        final int rowStride,
+        final int height,
+        final int width
+    ) {
+        if (height < 0 || width < 0) throw new IllegalArgumentException("Negative dimensions");
+        if (rowStride < width) throw new IllegalArgumentException("rowStride < width");
+        if (height > 0 && width > 0 && offset + (long) (height - 1) * rowStride + width > data.length)
+            throw new IndexOutOfBoundsException("The matrix does not fit in the array");
+        this.data = data;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.height = height;
+        this.width = width;
+    }
+
+    /**
+     * @return A matrix padded with zeroes.
+     */
+    public static DenseMatrix zeros(final int height, final int width) {
+        return new DenseMatrix(new double[Math.multiplyExact(height, width)], 0, width, height, width);
+    }
+
+    /**
+     * Copy a matrix of rows into a contiguous one.
+     *
+     * @param matrix A rectangular matrix.
+     * @return The same values in row-major order.
+     */
+    public static DenseMatrix of(final double[][] matrix) {
+        final int height = matrix.length;
+        final int width = height == 0 ? 0 : matrix[0].length;
+        final DenseMatrix output = zeros(height, width);
+        for (int i = 0; i < height; i++) {
+            if (matrix[i].length != width) throw new IllegalArgumentException("Ragged matrix");
+            System.arraycopy(matrix[i], 0, output.data, i * width, width);
+        }
+        return output;
+    }
+
+    /**
+     * Create a matrix with the numbers from 1 to (width * height), as
+     * {@link MatrixTools#createRangeMatrix} does.
+     */
+    public static DenseMatrix range(final int height, final int width) {
+        final DenseMatrix output = zeros(height, width);
+        for (int i = 0; i < output.data.length; i++) output.data[i] = i + 1.0;
+        return output;
+    }
+
+    /**
+     * Same as {@link #range(int, int)}, filled in parallel.
+     */
+    public static DenseMatrix range(final ForkJoinPool forkJoinPool, final int height, final int width) {
+        return generate(forkJoinPool, height, width, (i, j) -> i * (double) width + j + 1.0);
+    }
+
+    /**
+     * @return A matrix whose cell (i, j) is generator(i, j), filled in
+     *         parallel with {@link #fill}.
+     */
+    public static DenseMatrix generate(
+        final ForkJoinPool forkJoinPool,
+        final int height,
+        final int width,
+        final ParallelFor.IndexFunction2D generator
+    ) {
+        final DenseMatrix output = zeros(height, width);
+        output.fill(forkJoinPool, generator);
+        return output;
+    }
+
+    /**
+     * Set every cell (i, j) to generator(i, j), with one band of rows per
+     * worker of the pool.
+     */
+    public void fill(final ForkJoinPool forkJoinPool, final ParallelFor.IndexFunction2D generator) {
+        ParallelFor.forRange(forkJoinPool, height, forkJoinPool.getParallelism(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                final int row = index(i, 0);
+                for (int j = 0; j < width; j++) data[row + j] = generator.applyAsDouble(i, j);
+            }
+        });
+    }
+
+    /**
+     * @return A copy of this matrix as an array of rows.
+     */
+    public double[][] toArray() {
+        final double[][] output = new double[height][width];
+        for (int i = 0; i < height; i++)
+            System.arraycopy(data, index(i, 0), output[i], 0, width);
+        return output;
+    }
+
+    /**
+     * @return A view of the rows [row, row + height) and columns
+     *         [column, column + width) sharing the same array.
+     */
+    public DenseMatrix view(
+        final int row,
+        final int column,
+        final int height,
+        final int width
+    ) {
+        if (row < 0 || column < 0 || row + height > this.height || column + width > this.width)
+            throw new IndexOutOfBoundsException("View out of bounds");
+        return new DenseMatrix(data, index(row, column), rowStride, height, width);
+    }
+
+    public int index(final int i, final int j) {
+        return offset + i * rowStride + j;
+    }
+
+    public double get(final int i, final int j) {
+        return data[index(i, j)];
+    }
+
+    public void set(final int i, final int j, final double value) {
+        data[index(i, j)] = value;
+    }
+
+    /**
+     * @return Whether the matrix occupies its whole array without gaps.
+     */
+    public boolean isContiguous() {
+        return offset == 0 && rowStride == width && data.length == height * width;
+    }
+
+    public int numberOfElements() {
+        return height * width;
+    }
+}
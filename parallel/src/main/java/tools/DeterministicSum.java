@@ -0,0 +1,128 @@
+package tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Sums whose rounding does not depend on the number of threads or chunks.
+ * The range is cut in blocks of BLOCK_SIZE elements counted from its
+ * start; each block is summed left to right, in parallel with the other
+ * blocks, and the block sums are combined by a pairwise tree whose shape
+ * only depends on the number of blocks. Every addition therefore happens
+ * in the same order for any parallelism, and the result is bit-identical
+ * to {@link #sequentialSum}.
+ * <p>
+ * With compensation, every block and every node of the tree carries the
+ * Neumaier correction of its additions, which is added once at the end.
+ */
+public final class DeterministicSum {
+
+    public static final int BLOCK_SIZE = 1 << 12;
+
+    private DeterministicSum() {
+    }
+
+    /**
+     * @param forkJoinPool        The pool that sums the blocks.
+     * @param inputs              The array with values to be summed.
+     * @param startIndexInclusive Beginning of the sub array.
+     * @param endIndexExclusive   End of the sub array.
+     * @param mapper              The function applied to each element.
+     * @param compensated         Whether to track the rounding errors.
+     * @return The sum of the mapped elements.
+     */
+    public static double sum(
+        final ForkJoinPool forkJoinPool,
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final DoubleUnaryOperator mapper,
+        final boolean compensated
+    ) {
+        final int nBlocks = numberOfBlocks(startIndexInclusive, endIndexExclusive);
+        final double[] sums = new double[nBlocks];
+        final double[] compensations = compensated ? new double[nBlocks] : null;
+        ParallelFor.forRange(forkJoinPool, nBlocks, 4 * forkJoinPool.getParallelism(), (start, end) -> {
+            for (int b = start; b < end; b++)
+                sumBlock(inputs, startIndexInclusive, endIndexExclusive, b, mapper, sums, compensations);
+        });
+        return combine(sums, compensations);
+    }
+
+    /**
+     * Same additions as {@link #sum} on the calling thread.
+     */
+    public static double sequentialSum(
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final DoubleUnaryOperator mapper,
+        final boolean compensated
+    ) {
+        final int nBlocks = numberOfBlocks(startIndexInclusive, endIndexExclusive);
+        final double[] sums = new double[nBlocks];
+        final double[] compensations = compensated ? new double[nBlocks] : null;
+        for (int b = 0; b < nBlocks; b++)
+            sumBlock(inputs, startIndexInclusive, endIndexExclusive, b, mapper, sums, compensations);
+        return combine(sums, compensations);
+    }
+
+    public static double reciprocalSum(
+        final ForkJoinPool forkJoinPool,
+        final double[] inputs,
+        final boolean compensated
+    ) {
+        return sum(forkJoinPool, inputs, 0, inputs.length, x -> 1 / x, compensated);
+    }
+
+    private static int numberOfBlocks(final int startIndexInclusive, final int endIndexExclusive) {
+        if (endIndexExclusive < startIndexInclusive) throw new IllegalArgumentException("end < start");
+        return (int) (((long) endIndexExclusive - startIndexInclusive + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    private static void sumBlock(
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final int block,
+        final DoubleUnaryOperator mapper,
+        final double[] sums,
+        final double[] compensations
+    ) {
+        final int from = startIndexInclusive + block * BLOCK_SIZE;
+        final int to = Math.min(from + BLOCK_SIZE, endIndexExclusive);
+        double sum = 0;
+        if (compensations == null) {
+            for (int i = from; i < to; i++) sum += mapper.applyAsDouble(inputs[i]);
+        } else {
+            double compensation = 0;
+            for (int i = from; i < to; i++) {
+                final double x = mapper.applyAsDouble(inputs[i]);
+                final double t = sum + x;
+                compensation += Math.abs(sum) >= Math.abs(x) ? (sum - t) + x : (x - t) + sum;
+                sum = t;
+            }
+            compensations[block] = compensation;
+        }
+        sums[block] = sum;
+    }
+
+    /**
+     * Pairwise tree over the block sums: at each level the node i absorbs
+     * the node i + width, for width = 1, 2, 4, ...
+     */
+    private static double combine(final double[] sums, final double[] compensations) {
+        final int n = sums.length;
+        if (n == 0) return 0;
+        for (int width = 1; width < n; width *= 2)
+            for (int i = 0; i + width < n; i += 2 * width) {
+                final double a = sums[i], b = sums[i + width];
+                final double s = a + b;
+                sums[i] = s;
+                if (compensations != null)
+                    compensations[i] += compensations[i + width] +
+                        (Math.abs(a) >= Math.abs(b) ? (a - s) + b : (b - s) + a);
+            }
+        return compensations == null ? sums[0] : sums[0] + compensations[0];
+    }
+}
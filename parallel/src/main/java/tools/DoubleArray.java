@@ -0,0 +1,274 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * An array of doubles stored outside the heap, indexed with longs so it
+ * can hold more than 2^31 elements. The elements live in pages of
+ * PAGE_SIZE doubles, each one a direct or memory mapped buffer, so the
+ * garbage collector never scans or copies them.
+ * <p>
+ * Direct pages count against -XX:MaxDirectMemorySize, which defaults to
+ * the maximum heap size; mapped pages are backed by the file and only
+ * limited by the address space. {@link #close()} frees the direct memory
+ * or unmaps the file right away instead of when the buffers are garbage
+ * collected; the array must not be used by any thread afterwards.
+ */
+public final class DoubleArray implements AutoCloseable {
+
+    public static final int PAGE_SHIFT = 27;
+
+    /**
+     * Doubles per page, 1GB of memory.
+     */
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Doubles per parallel chunk, a divisor of PAGE_SIZE so no chunk
+     * crosses a page.
+     */
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Unsafe.invokeCleaner, the only way to free a direct or mapped buffer
+     * before it is collected; null if the JDK does not have it.
+     */
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private DoubleBuffer[] pages;
+
+    private ByteBuffer[] buffers;
+
+    private final long length;
+
+    private DoubleArray(final ByteBuffer[] buffers, final long length) {
+        this.buffers = buffers;
+        this.pages = new DoubleBuffer[buffers.length];
+        for (int p = 0; p < buffers.length; p++)
+            pages[p] = buffers[p].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        this.length = length;
+    }
+
+    /**
+     * Allocate a zeroed array in direct memory.
+     */
+    public static DoubleArray allocateDirect(final long length) {
+        final ByteBuffer[] buffers = new ByteBuffer[numberOfPages(length)];
+        for (int p = 0; p < buffers.length; p++)
+            buffers[p] = ByteBuffer.allocateDirect(pageLength(p, length) * Double.BYTES);
+        return new DoubleArray(buffers, length);
+    }
+
+    /**
+     * Map an array onto a file, creating or growing it as needed. Writes
+     * reach the file when the pages are evicted or on {@link #force()}.
+     */
+    public static DoubleArray map(final Path file, final long length) {
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            final ByteBuffer[] buffers = new ByteBuffer[numberOfPages(length)];
+            for (int p = 0; p < buffers.length; p++)
+                buffers[p] = channel.map(
+                    FileChannel.MapMode.READ_WRITE,
+                    (long) p * PAGE_SIZE * Double.BYTES,
+                    (long) pageLength(p, length) * Double.BYTES
+                );
+            return new DoubleArray(buffers, length);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Creates a direct array with the numbers from 1 to length, filled in
+     * parallel, as {@link EvaluationTools#createRangeArray} does on the heap.
+     */
+    public static DoubleArray createRangeArray(final ForkJoinPool forkJoinPool, final long length) {
+        final DoubleArray output = allocateDirect(length);
+        output.fill(forkJoinPool, i -> i + 1.0);
+        return output;
+    }
+
+    private static int numberOfPages(final long length) {
+        if (length < 0) throw new IllegalArgumentException("length < 0");
+        return Math.toIntExact((length + PAGE_SIZE - 1) >>> PAGE_SHIFT);
+    }
+
+    private static int pageLength(final int page, final long length) {
+        return (int) Math.min(PAGE_SIZE, length - ((long) page << PAGE_SHIFT));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public double get(final long index) {
+        checkIndex(index);
+        return pages()[(int) (index >>> PAGE_SHIFT)].get((int) (index & PAGE_MASK));
+    }
+
+    public void set(final long index, final double value) {
+        checkIndex(index);
+        pages()[(int) (index >>> PAGE_SHIFT)].put((int) (index & PAGE_MASK), value);
+    }
+
+    private DoubleBuffer[] pages() {
+        final DoubleBuffer[] output = pages;
+        if (output == null) throw new IllegalStateException("DoubleArray closed");
+        return output;
+    }
+
+    private void checkIndex(final long index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(Long.toString(index));
+    }
+
+    public int numberOfChunks() {
+        return Math.toIntExact((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Set every element i to generator(i), one chunk per task.
+     */
+    public void fill(final ForkJoinPool forkJoinPool, final LongToDoubleFunction generator) {
+        final DoubleBuffer[] pages = pages();
+        ParallelFor.forRangeChunked(forkJoinPool, numberOfChunks(), 1, (start, end) -> {
+            for (int c = start; c < end; c++) {
+                final long first = (long) c * CHUNK_SIZE;
+                final DoubleBuffer page = pages[(int) (first >>> PAGE_SHIFT)];
+                final int from = (int) (first & PAGE_MASK);
+                final int to = from + chunkLength(c);
+                for (int i = from; i < to; i++) page.put(i, generator.applyAsDouble(first + i - from));
+            }
+        });
+    }
+
+    /**
+     * Replace every element x with operator(x), one chunk per task.
+     */
+    public void map(final ForkJoinPool forkJoinPool, final DoubleUnaryOperator operator) {
+        final DoubleBuffer[] pages = pages();
+        ParallelFor.forRangeChunked(forkJoinPool, numberOfChunks(), 1, (start, end) -> {
+            for (int c = start; c < end; c++) {
+                final long first = (long) c * CHUNK_SIZE;
+                final DoubleBuffer page = pages[(int) (first >>> PAGE_SHIFT)];
+                final int from = (int) (first & PAGE_MASK);
+                final int to = from + chunkLength(c);
+                for (int i = from; i < to; i++) page.put(i, operator.applyAsDouble(page.get(i)));
+            }
+        });
+    }
+
+    /**
+     * Reduce mapper(x) over all the elements with an associative combiner.
+     * Each chunk is reduced by one task and the chunk results are combined
+     * in order, so the result does not depend on the pool.
+     */
+    public double reduce(
+        final ForkJoinPool forkJoinPool,
+        final double identity,
+        final DoubleUnaryOperator mapper,
+        final DoubleBinaryOperator combiner
+    ) {
+        final DoubleBuffer[] pages = pages();
+        final double[] partials = new double[numberOfChunks()];
+        ParallelFor.forRangeChunked(forkJoinPool, partials.length, 1, (start, end) -> {
+            for (int c = start; c < end; c++) {
+                final long first = (long) c * CHUNK_SIZE;
+                final DoubleBuffer page = pages[(int) (first >>> PAGE_SHIFT)];
+                final int from = (int) (first & PAGE_MASK);
+                final int to = from + chunkLength(c);
+                double output = identity;
+                for (int i = from; i < to; i++)
+                    output = combiner.applyAsDouble(output, mapper.applyAsDouble(page.get(i)));
+                partials[c] = output;
+            }
+        });
+        double output = identity;
+        for (double partial : partials) output = combiner.applyAsDouble(output, partial);
+        return output;
+    }
+
+    /**
+     * @return The reciprocal sum of all the elements, see
+     *         {@link EvaluationTools#sequentialReciprocalArraySum}.
+     */
+    public double reciprocalSum(final ForkJoinPool forkJoinPool) {
+        return reduce(forkJoinPool, 0, x -> 1 / x, Double::sum);
+    }
+
+    private int chunkLength(final int chunk) {
+        return (int) Math.min(CHUNK_SIZE, length - (long) chunk * CHUNK_SIZE);
+    }
+
+    /**
+     * Write the pages of a mapped array back to the file.
+     */
+    public void force() {
+        pages();
+        for (ByteBuffer buffer : buffers)
+            if (buffer instanceof MappedByteBuffer) ((MappedByteBuffer) buffer).force();
+    }
+
+    /**
+     * Free the direct pages or unmap the mapped ones; the writes to a
+     * mapped file are kept. Without invokeCleaner the pages are only
+     * dropped, and freed when they are collected.
+     */
+    @Override
+    public void close() {
+        final ByteBuffer[] released = buffers;
+        if (released == null) return;
+        pages = null;
+        buffers = null;
+        release(released);
+    }
+
+    /**
+     * Free or unmap direct buffers right away with invokeCleaner, or leave
+     * them to the garbage collector without it. The buffers, and their
+     * slices, must not be used afterwards.
+     */
+    static void release(final ByteBuffer... buffers) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            for (ByteBuffer buffer : buffers) INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException exc) {
+            return null;
+        }
+    }
+}
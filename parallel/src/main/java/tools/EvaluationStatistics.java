@@ -0,0 +1,280 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Summary of the measured iterations of one evaluation. Outliers are
+ * rejected with Tukey's fences before the order statistics are computed,
+ * the raw samples are kept so that several evaluations can be merged.
+ */
+public final class EvaluationStatistics {
+
+    /**
+     * Samples further than this many interquartile ranges from the first
+     * or third quartile are rejected.
+     */
+    public static final double OUTLIER_FENCE = 1.5;
+
+    public final long[] samples;
+    public final long[] gcCounts;
+    public final long[] gcTimes;
+
+    /**
+     * Bytes allocated by all the threads during each iteration, -1 if not
+     * measured, see {@link ResourceUsage}.
+     */
+    public final long[] allocatedBytes;
+
+    /**
+     * CPU time of all the threads in nanoseconds during each iteration, -1
+     * if not measured.
+     */
+    public final long[] cpuTimes;
+    public final long[] kept;
+    public final int outliers;
+    public final long min;
+    public final long median;
+    public final long p90;
+    public final long p99;
+    public final double mean;
+    public final double stddev;
+
+    /**
+     * @param samples  Elapsed time of each iteration in nanoseconds.
+     * @param gcCounts Number of collections during each iteration.
+     * @param gcTimes  Collection time in milliseconds during each iteration.
+     */
+    public EvaluationStatistics(
+        final long[] samples,
+        final long[] gcCounts,
+        final long[] gcTimes
+    ) {
+        this(samples, gcCounts, gcTimes, unmeasured(samples.length), unmeasured(samples.length));
+    }
+
+    /**
+     * @param samples        Elapsed time of each iteration in nanoseconds.
+     * @param gcCounts       Number of collections during each iteration.
+     * @param gcTimes        Collection time in milliseconds during each iteration.
+     * @param allocatedBytes Bytes allocated during each iteration.
+     * @param cpuTimes       CPU time in nanoseconds during each iteration.
+     */
+    public EvaluationStatistics(
+        final long[] samples,
+        final long[] gcCounts,
+        final long[] gcTimes,
+        final long[] allocatedBytes,
+        final long[] cpuTimes
+    ) {
+        if (samples.length < 1) throw new RuntimeException("At least one sample is needed");
+        if (gcCounts.length != samples.length || gcTimes.length != samples.length ||
+            allocatedBytes.length != samples.length || cpuTimes.length != samples.length)
+            throw new RuntimeException("Inconsistent sample lengths");
+        this.samples = samples;
+        this.gcCounts = gcCounts;
+        this.gcTimes = gcTimes;
+        this.allocatedBytes = allocatedBytes;
+        this.cpuTimes = cpuTimes;
+        this.kept = rejectOutliers(samples);
+        this.outliers = samples.length - kept.length;
+        this.min = kept[0];
+        this.median = percentile(kept, 50);
+        this.p90 = percentile(kept, 90);
+        this.p99 = percentile(kept, 99);
+        this.mean = meanOf(kept);
+        this.stddev = stddevOf(kept, mean);
+    }
+
+    public static EvaluationStatistics single(final long time) {
+        return new EvaluationStatistics(new long[]{time}, new long[1], new long[1]);
+    }
+
+    /**
+     * Concatenate the samples of several evaluations of the same computation.
+     */
+    public static EvaluationStatistics merge(final EvaluationStatistics... statistics) {
+        int length = 0;
+        for (EvaluationStatistics s : statistics) length += s.samples.length;
+        final long[] samples = new long[length];
+        final long[] gcCounts = new long[length];
+        final long[] gcTimes = new long[length];
+        final long[] allocatedBytes = new long[length];
+        final long[] cpuTimes = new long[length];
+        int offset = 0;
+        for (EvaluationStatistics s : statistics) {
+            System.arraycopy(s.samples, 0, samples, offset, s.samples.length);
+            System.arraycopy(s.gcCounts, 0, gcCounts, offset, s.gcCounts.length);
+            System.arraycopy(s.gcTimes, 0, gcTimes, offset, s.gcTimes.length);
+            System.arraycopy(s.allocatedBytes, 0, allocatedBytes, offset, s.allocatedBytes.length);
+            System.arraycopy(s.cpuTimes, 0, cpuTimes, offset, s.cpuTimes.length);
+            offset += s.samples.length;
+        }
+        return new EvaluationStatistics(samples, gcCounts, gcTimes, allocatedBytes, cpuTimes);
+    }
+
+    public int numberOfSamples() {
+        return samples.length;
+    }
+
+    public long totalGcCount() {
+        long output = 0;
+        for (long c : gcCounts) output += c;
+        return output;
+    }
+
+    public long totalGcTime() {
+        long output = 0;
+        for (long t : gcTimes) output += t;
+        return output;
+    }
+
+    /**
+     * @return The mean bytes allocated per iteration, NaN if not measured.
+     */
+    public double meanAllocatedBytes() {
+        return measuredMeanOf(allocatedBytes);
+    }
+
+    /**
+     * @return The mean CPU time per iteration in nanoseconds, NaN if not
+     *         measured.
+     */
+    public double meanCpuTime() {
+        return measuredMeanOf(cpuTimes);
+    }
+
+    /**
+     * @return The CPU time of all the threads over the elapsed time of all
+     *         the iterations, the average number of busy processors.
+     */
+    public double cpuUtilization() {
+        long elapsed = 0;
+        for (long sample : samples) elapsed += sample;
+        return meanCpuTime() * samples.length / elapsed;
+    }
+
+    private static long[] unmeasured(final int length) {
+        final long[] output = new long[length];
+        Arrays.fill(output, -1);
+        return output;
+    }
+
+    private static double measuredMeanOf(final long[] values) {
+        double sum = 0;
+        int n = 0;
+        for (long value : values)
+            if (value >= 0) {
+                sum += value;
+                n++;
+            }
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    /**
+     * Bootstrap confidence interval of the speedup mean(A) / mean(B),
+     * resampling the kept samples of both evaluations independently.
+     *
+     * @param A          The reference evaluation, usually the sequential one.
+     * @param B          The evaluation whose speedup is estimated.
+     * @param confidence The confidence level, for example 0.95.
+     * @param nResamples The number of bootstrap resamples.
+     * @return The interval around the observed speedup.
+     */
+    public static SpeedupInterval speedupInterval(
+        final EvaluationStatistics A,
+        final EvaluationStatistics B,
+        final double confidence,
+        final int nResamples
+    ) {
+        if (confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("confidence must be in (0, 1)");
+        final Random random = new Random(42);
+        final double[] ratios = new double[nResamples];
+        for (int r = 0; r < nResamples; r++)
+            ratios[r] = resampledMean(A.kept, random) / resampledMean(B.kept, random);
+        Arrays.sort(ratios);
+        final double alpha = (1 - confidence) / 2;
+        final int low = (int) Math.floor(alpha * (nResamples - 1));
+        final int high = (int) Math.ceil((1 - alpha) * (nResamples - 1));
+        return new SpeedupInterval(A.mean / B.mean, ratios[low], ratios[high], confidence);
+    }
+
+    public static SpeedupInterval speedupInterval(
+        final EvaluationStatistics A,
+        final EvaluationStatistics B
+    ) {
+        return speedupInterval(A, B, 0.95, 2000);
+    }
+
+    private static double resampledMean(final long[] samples, final Random random) {
+        double sum = 0;
+        for (int i = 0; i < samples.length; i++) sum += samples[random.nextInt(samples.length)];
+        return sum / samples.length;
+    }
+
+    /**
+     * @return The sorted samples that lie inside Tukey's fences.
+     */
+    private static long[] rejectOutliers(final long[] samples) {
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        if (sorted.length < 4) return sorted;
+        final double q1 = interpolatedPercentile(sorted, 25);
+        final double q3 = interpolatedPercentile(sorted, 75);
+        final double iqr = q3 - q1;
+        final double lower = q1 - OUTLIER_FENCE * iqr;
+        final double upper = q3 + OUTLIER_FENCE * iqr;
+        return Arrays.stream(sorted).filter(s -> s >= lower && s <= upper).toArray();
+    }
+
+    private static long percentile(final long[] sorted, final double p) {
+        return Math.round(interpolatedPercentile(sorted, p));
+    }
+
+    private static double interpolatedPercentile(final long[] sorted, final double p) {
+        final double rank = p / 100.0 * (sorted.length - 1);
+        final int lower = (int) Math.floor(rank);
+        final int upper = (int) Math.ceil(rank);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private static double meanOf(final long[] samples) {
+        double sum = 0;
+        for (long s : samples) sum += s;
+        return sum / samples.length;
+    }
+
+    private static double stddevOf(final long[] samples, final double mean) {
+        if (samples.length < 2) return 0;
+        double sum = 0;
+        for (long s : samples) sum += (s - mean) * (s - mean);
+        return Math.sqrt(sum / (samples.length - 1));
+    }
+
+    public static final class SpeedupInterval {
+        public final double estimate;
+        public final double low;
+        public final double high;
+        public final double confidence;
+
+        public SpeedupInterval(
+            double estimate,
+            double low,
+            double high,
+            double confidence
+        ) {
+            this.estimate = estimate;
+            this.low = low;
+            this.high = high;
+            this.confidence = confidence;
+        }
+
+        /**
+         * @return Whether the interval excludes the given speedup.
+         */
+        public boolean excludes(final double speedup) {
+            return speedup < low || speedup > high;
+        }
+    }
+}
@@ -1,13 +1,47 @@
 package tools;
 
 import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.Supplier;
 
+import tools.EvaluationStatistics.SpeedupInterval;
+
 public class EvaluationTools {
 
     private static int step = 1;
 
+    /**
+     * Unmeasured runs of each computation before the measured ones, set with
+     * -Devaluation.warmupIterations or {@link #setIterations}.
+     */
+    private static int warmupIterations = Integer.getInteger("evaluation.warmupIterations", 0);
+
+    /**
+     * Measured runs of each computation, set with
+     * -Devaluation.measurementIterations or {@link #setIterations}.
+     */
+    private static int measurementIterations = Integer.getInteger("evaluation.measurementIterations", 1);
+
+    /**
+     * Configure how many times {@link #evaluate} runs each computation.
+     *
+     * @param warmup      Number of unmeasured runs.
+     * @param measurement Number of measured runs, at least one.
+     */
+    public static void setIterations(final int warmup, final int measurement) {
+        if (warmup < 0) throw new RuntimeException("warmup < 0");
+        if (measurement < 1) throw new RuntimeException("At least one iteration is needed");
+        warmupIterations = warmup;
+        measurementIterations = measurement;
+    }
+
     public static void warmup() {
         for (int j = 0; j < 100_000_000; j++) Math.random();
     }
@@ -16,17 +50,82 @@ public class EvaluationTools {
         final String title,
         final int size,
         final Supplier<T> evaluation
+    ) {
+        return evaluate(title, size, null, inputs -> evaluation.get());
+    }
+
+    /**
+     * Same as {@link #evaluate(String, int, Supplier)} on inputs created by
+     * fill before every run. The fill is timed on its own, and left out of
+     * the time, the allocations and the CPU time of the evaluation, so that
+     * creating large inputs does not hide the computation.
+     *
+     * @param fill       Creates the inputs of one run, or null.
+     * @param evaluation The computation on the inputs.
+     */
+    public static <I, T> EvaluationResult<T> evaluate(
+        final String title,
+        final int size,
+        final Supplier<I> fill,
+        final Function<? super I, T> evaluation
     ) {
         printStep(title);
+        for (int i = 0; i < warmupIterations; i++) evaluation.apply(fill == null ? null : fill.get());
+        final long[] fillTimes = new long[measurementIterations];
+        final long[] times = new long[measurementIterations];
+        final long[] gcCounts = new long[measurementIterations];
+        final long[] gcTimes = new long[measurementIterations];
+        final long[] allocatedBytes = new long[measurementIterations];
+        final long[] cpuTimes = new long[measurementIterations];
         final StepTimer stepTimer = new StepTimer();
-        stepTimer.start();
-        final T result = evaluation.get();
-        final long time = stepTimer.finish();
-        EvaluationResult<T> output = new EvaluationResult<>(title, size, result, time);
+        T result = null;
+        for (int i = 0; i < measurementIterations; i++) {
+            stepTimer.start();
+            final I inputs = fill == null ? null : fill.get();
+            fillTimes[i] = fill == null ? 0 : stepTimer.finish();
+            final long gcCount = gcCount();
+            final long gcTime = gcTime();
+            final ResourceUsage usage = ResourceUsage.snapshot();
+            stepTimer.start();
+            result = evaluation.apply(inputs);
+            times[i] = stepTimer.finish();
+            final ResourceUsage finalUsage = ResourceUsage.snapshot();
+            allocatedBytes[i] = finalUsage.allocatedBytesSince(usage);
+            cpuTimes[i] = finalUsage.cpuTimeSince(usage);
+            gcCounts[i] = gcCount() - gcCount;
+            gcTimes[i] = gcTime() - gcTime;
+        }
+        final EvaluationStatistics statistics = new EvaluationStatistics(
+            times, gcCounts, gcTimes, allocatedBytes, cpuTimes
+        );
+        Arrays.sort(fillTimes);
+        EvaluationResult<T> output = new EvaluationResult<>(
+            title, size, result, statistics.median, statistics, fillTimes[fillTimes.length / 2]
+        );
         printResult(output);
         return output;
     }
 
+    /**
+     * @return The number of collections since the start of the JVM.
+     */
+    public static long gcCount() {
+        long output = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            output += Math.max(0, bean.getCollectionCount());
+        return output;
+    }
+
+    /**
+     * @return The accumulated collection time in milliseconds.
+     */
+    public static long gcTime() {
+        long output = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            output += Math.max(0, bean.getCollectionTime());
+        return output;
+    }
+
     public static <T> ResultTuple<T> evaluateBoth(
         final String title1,
         final int size1,
@@ -38,10 +137,52 @@ public class EvaluationTools {
         final EvaluationResult<T> resultA = evaluate(title1, size1, evaluation1);
         final EvaluationResult<T> resultB = evaluate(title2, size2, evaluation2);
         printTimeRatio(resultA.time, resultB.time);
+        if (resultA.statistics.numberOfSamples() > 1 && resultB.statistics.numberOfSamples() > 1)
+            printSpeedupInterval(speedupInterval(resultA, resultB));
         return new ResultTuple(resultA, resultB);
 //        return Arrays.asList(resultA, resultB);
     }
 
+    /**
+     * Same as {@link #evaluateBoth} with a third variant, compared to the
+     * first one as well.
+     */
+    public static <T> ResultTuple<T> evaluateAll(
+        final String title1,
+        final int size1,
+        final Supplier<T> evaluation1,
+        final String title2,
+        final int size2,
+        final Supplier<T> evaluation2,
+        final String title3,
+        final int size3,
+        final Supplier<T> evaluation3
+    ) {
+        return compareResults(
+            evaluate(title1, size1, evaluation1),
+            evaluate(title2, size2, evaluation2),
+            evaluate(title3, size3, evaluation3)
+        );
+    }
+
+    /**
+     * Print how the second and third evaluations compare to the first one,
+     * as {@link #evaluateAll} does.
+     */
+    public static <T> ResultTuple<T> compareResults(
+        final EvaluationResult<T> resultA,
+        final EvaluationResult<T> resultB,
+        final EvaluationResult<T> resultC
+    ) {
+        printTimeRatio(resultA.time, resultB.time);
+        printTimeRatio(resultA.time, resultC.time);
+        if (resultA.statistics.numberOfSamples() > 1 && resultB.statistics.numberOfSamples() > 1) {
+            printSpeedupInterval(speedupInterval(resultA, resultB));
+            printSpeedupInterval(speedupInterval(resultA, resultC));
+        }
+        return new ResultTuple<>(resultA, resultB, resultC);
+    }
+
     /**
      * Creates an array of doubles from 1 to arrayLength inclusive.
      *
@@ -54,17 +195,122 @@ public class EvaluationTools {
         return output;
     }
 
+    /**
+     * Same as {@link #createRangeArray(int)}, filled in parallel.
+     */
+    public static double[] createRangeArray(final ForkJoinPool forkJoinPool, final int arrayLength) {
+        return generateArray(forkJoinPool, arrayLength, i -> i + 1.0);
+    }
+
+    /**
+     * @return An array whose element i is generator(i), filled in parallel
+     *         with {@link #fill}.
+     */
+    public static double[] generateArray(
+        final ForkJoinPool forkJoinPool,
+        final int arrayLength,
+        final IntToDoubleFunction generator
+    ) {
+        final double[] output = new double[arrayLength];
+        fill(forkJoinPool, output, generator);
+        return output;
+    }
+
+    /**
+     * Set every element i of the array to generator(i), with one chunk per
+     * worker of the pool, the chunks of a {@link ParallelFor} loop with as
+     * many chunks.
+     */
+    public static void fill(
+        final ForkJoinPool forkJoinPool,
+        final double[] output,
+        final IntToDoubleFunction generator
+    ) {
+        ParallelFor.forRange(forkJoinPool, output.length, forkJoinPool.getParallelism(), (start, end) -> {
+            for (int i = start; i < end; i++) output[i] = generator.applyAsDouble(i);
+        });
+    }
+
     public static <T> void printEvaluationResults(List<ResultTuple<T>> results) {
         for (int i = 0; i < results.size(); i++) {
+            final ResultTuple<T> result = results.get(i);
             printer().printf(
-                "%02d - At %11.3fms parallel speed is %7.2f%%%n",
+                "%02d - At %11.3fms parallel speed is %7.2f%%",
                 i + 1,
-                results.get(i).A.time / 1e6,
-                100 * results.get(i).A.time / (double) results.get(i).B.time
+                result.A.time / 1e6,
+                100 * result.A.time / (double) result.B.time
             );
+            if (result.C != null)
+                printer().printf(
+                    ", %s speed is %7.2f%%",
+                    result.C.title,
+                    100 * result.A.time / (double) result.C.time
+                );
+            if (result.A.statistics.numberOfSamples() > 1 && result.B.statistics.numberOfSamples() > 1) {
+                final SpeedupInterval interval = speedupInterval(result.A, result.B);
+                printer().printf(
+                    " [%7.2f%%, %7.2f%%] - %d/%d samples",
+                    100 * interval.low,
+                    100 * interval.high,
+                    result.A.statistics.kept.length,
+                    result.B.statistics.kept.length
+                );
+            }
+            printer().printf(" - %s", usageOf(result.A));
+            printer().printf(" - %s", usageOf(result.B));
+            if (result.C != null) printer().printf(" - %s", usageOf(result.C));
+            printer().println();
         }
     }
 
+    /**
+     * @return The bytes allocated per element and the busy processors of an
+     *         evaluation, the allocation-bound variants stand out.
+     */
+    private static String usageOf(final EvaluationResult<?> result) {
+        final String usage = String.format(
+            "%s: %.2f B/element, %.2f CPUs",
+            result.title, result.bytesPerElement(), result.cpuUtilization()
+        );
+        return result.fillTime > 0 ? usage + String.format(", fill %.3fms", result.fillTime / 1e6) : usage;
+    }
+
+    public static SpeedupInterval speedupInterval(
+        final EvaluationResult<?> A,
+        final EvaluationResult<?> B
+    ) {
+        return EvaluationStatistics.speedupInterval(A.statistics, B.statistics);
+    }
+
+    public static void printSpeedupInterval(final SpeedupInterval interval) {
+        printer().printf(
+            "speedup %1.3f, %.0f%% confidence interval [%1.3f, %1.3f]%n%n",
+            interval.estimate,
+            100 * interval.confidence,
+            interval.low,
+            interval.high
+        );
+    }
+
+    /**
+     * Prints the order statistics of an evaluation.
+     *
+     * @param statistics The measured iterations.
+     */
+    public static void printStatistics(final EvaluationStatistics statistics) {
+        printer().printf(
+            "min: %4.4fms, median: %4.4fms, p90: %4.4fms, p99: %4.4fms, stddev: %4.4fms" +
+                " - %d samples, %d outliers%n",
+            statistics.min / 1e6,
+            statistics.median / 1e6,
+            statistics.p90 / 1e6,
+            statistics.p99 / 1e6,
+            statistics.stddev / 1e6,
+            statistics.numberOfSamples(),
+            statistics.outliers
+        );
+    }
+
     /**
      * Prints the results of a computation.
      *
@@ -81,6 +327,28 @@ public class EvaluationTools {
 
     public static void printResult(EvaluationResult<?> result) {
         printResult(result.title, result.size, result.time);
+        if (result.fillTime > 0) printer().printf("fill time: %4.4fms, not included%n", result.fillTime / 1e6);
+        if (result.statistics.numberOfSamples() > 1) printStatistics(result.statistics);
+        printUsage(result);
+    }
+
+    /**
+     * Prints the allocations, collections and CPU time of an evaluation,
+     * per measured iteration.
+     *
+     * @param result The evaluation.
+     */
+    public static void printUsage(final EvaluationResult<?> result) {
+        final EvaluationStatistics statistics = result.statistics;
+        printer().printf(
+            "allocated: %.3fMB, %.2f B/element - cpu: %4.4fms, %.2f CPUs - gc: %d collections, %dms%n",
+            statistics.meanAllocatedBytes() / 1e6,
+            result.bytesPerElement(),
+            statistics.meanCpuTime() / 1e6,
+            result.cpuUtilization(),
+            statistics.totalGcCount(),
+            statistics.totalGcTime()
+        );
     }
 
     public static void printTimeRatio(final long time1, final long time2) {
@@ -215,26 +483,80 @@ public class EvaluationTools {
         public final int size;
         public final T result;
         public final long time;
+        public final EvaluationStatistics statistics;
+
+        /**
+         * The median time to create the inputs, outside of time, or 0.
+         */
+        public final long fillTime;
 
         public EvaluationResult(
             String title,
             int size,
             T result,
             long time
+        ) {
+            this(title, size, result, time, EvaluationStatistics.single(time));
+        }
+
+        public EvaluationResult(
+            String title,
+            int size,
+            T result,
+            long time,
+            EvaluationStatistics statistics
+        ) {
+            this(title, size, result, time, statistics, 0);
+        }
+
+        public EvaluationResult(
+            String title,
+            int size,
+            T result,
+            long time,
+            EvaluationStatistics statistics,
+            long fillTime
         ) {
             this.title = title;
             this.size = size;
             this.result = result;
             this.time = time;
+            this.statistics = statistics;
+            this.fillTime = fillTime;
+        }
+
+        /**
+         * @return The mean bytes allocated per element of the size.
+         */
+        public double bytesPerElement() {
+            return statistics.meanAllocatedBytes() / Math.max(1, size);
+        }
+
+        /**
+         * @return The average number of processors kept busy.
+         */
+        public double cpuUtilization() {
+            return statistics.cpuUtilization();
         }
     }
 
     public static class ResultTuple<T> {
         public final EvaluationResult<T> A;
         public final EvaluationResult<T> B;
+
+        /**
+         * The optional third variant of {@link #evaluateAll}, or null.
+         */
+        public final EvaluationResult<T> C;
+
         public ResultTuple(EvaluationResult<T> A, EvaluationResult<T> B) {
+            this(A, B, null);
+        }
+
+        public ResultTuple(EvaluationResult<T> A, EvaluationResult<T> B, EvaluationResult<T> C) {
             this.A = A;
             this.B = B;
+            this.C = C;
         }
     }
 
@@ -243,23 +565,43 @@ public class EvaluationTools {
         final int nIterations
     ) {
         if (nIterations < 1) throw new RuntimeException("At least one iteration is needed");
-        ResultTuple<T> out = null;
-        long timeA = 0, timeB = 0;
+        final List<EvaluationResult<T>> resultsA = new ArrayList<>();
+        final List<EvaluationResult<T>> resultsB = new ArrayList<>();
+        final List<EvaluationResult<T>> resultsC = new ArrayList<>();
         for (int i = 0; i < nIterations; i++) {
             ResultTuple<T> temp = supplier.get();
-            if (out != null)
-                if (!temp.A.title.equals(out.A.title) || !temp.B.title.equals(out.B.title) ||
-                    temp.A.size != out.A.size || temp.B.size != out.B.size
-                ) throw new RuntimeException("Inconsistent result inputs");
-            out = temp;
-            timeA += out.A.time;
-            timeB += out.B.time;
+            resultsA.add(temp.A);
+            resultsB.add(temp.B);
+            if (temp.C != null) resultsC.add(temp.C);
         }
-        timeA /= nIterations;
-        timeB /= nIterations;
+        if (!resultsC.isEmpty() && resultsC.size() != nIterations)
+            throw new RuntimeException("Inconsistent result inputs");
         return new ResultTuple<>(
-            new EvaluationResult<>(out.A.title, out.A.size, out.A.result, timeA),
-            new EvaluationResult<>(out.B.title, out.B.size, out.B.result, timeB)
+            averageOf(resultsA),
+            averageOf(resultsB),
+            resultsC.isEmpty() ? null : averageOf(resultsC)
+        );
+    }
+
+    /**
+     * @return The last result with the mean time and the samples of all
+     *         the results.
+     */
+    private static <T> EvaluationResult<T> averageOf(final List<EvaluationResult<T>> results) {
+        final EvaluationResult<T> out = results.get(results.size() - 1);
+        final EvaluationStatistics[] statistics = new EvaluationStatistics[results.size()];
+        long time = 0, fillTime = 0;
+        for (int i = 0; i < results.size(); i++) {
+            final EvaluationResult<T> result = results.get(i);
+            if (!result.title.equals(out.title) || result.size != out.size)
+                throw new RuntimeException("Inconsistent result inputs");
+            time += result.time;
+            fillTime += result.fillTime;
+            statistics[i] = result.statistics;
+        }
+        return new EvaluationResult<>(
+            out.title, out.size, out.result, time / results.size(),
+            EvaluationStatistics.merge(statistics), fillTime / results.size()
         );
     }
 
@@ -0,0 +1,229 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * How the chunks of a workload are spawned and joined: futures of an
+ * executor service as in Lecture2_1, completable futures, or a
+ * {@link TaskScope} with a thread per chunk. Every strategy returns the
+ * results in the order of the tasks, so the workloads combine them the
+ * same way whatever runs them.
+ * <p>
+ * Virtual threads are looked up by reflection, since the build targets an
+ * older release than JDK 21; {@link #virtualThreadsAvailable()} tells
+ * whether the running JVM has them.
+ * <p>
+ * Close a strategy when it is no longer needed: the ones that create
+ * their own executor, as {@link #virtualThreads()}, shut it down, the
+ * others leave the pools they were given running.
+ */
+public abstract class ExecutionStrategy implements AutoCloseable {
+
+    public final String name;
+
+    protected ExecutionStrategy(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Spawn all the tasks, then join them.
+     *
+     * @return The results in the order of the tasks.
+     * @throws RuntimeException If a task failed.
+     */
+    public abstract <T> List<T> invokeAll(List<? extends Callable<T>> tasks);
+
+    /**
+     * Release what the strategy owns; nothing by default.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Run body(chunk) for every chunk in [0, nChunks) as separate tasks.
+     */
+    public void forEachChunk(final int nChunks, final IntConsumer body) {
+        final List<Callable<Void>> tasks = new ArrayList<>(nChunks);
+        for (int i = 0; i < nChunks; i++) {
+            final int chunk = i;
+            tasks.add(() -> {
+                body.accept(chunk);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Submit to an executor service and wait on each future in turn.
+     */
+    public static ExecutionStrategy of(final String name, final ExecutorService executorService) {
+        return of(name, executorService, false);
+    }
+
+    /**
+     * @param owner Whether closing the strategy shuts the executor service
+     *              down and waits for its threads.
+     */
+    private static ExecutionStrategy of(
+        final String name,
+        final ExecutorService executorService,
+        final boolean owner
+    ) {
+        return new ExecutionStrategy(name) {
+            @Override
+            public <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+                final List<Future<T>> futures = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks) futures.add(executorService.submit(task));
+                final List<T> output = new ArrayList<>(tasks.size());
+                try {
+                    for (Future<T> future : futures) output.add(future.get());
+                    return output;
+                } catch (ExecutionException | InterruptedException exc) {
+                    for (Future<T> future : futures) future.cancel(true);
+                    throw new RuntimeException(exc);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (!owner) return;
+                executorService.shutdown();
+                try {
+                    while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) ;
+                } catch (InterruptedException exc) {
+                    executorService.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    /**
+     * supplyAsync on the executor, then join every future.
+     */
+    public static ExecutionStrategy completableFutures(final String name, final Executor executor) {
+        return new ExecutionStrategy(name) {
+            @Override
+            public <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+                final List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks)
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return task.call();
+                        } catch (Exception exc) {
+                            throw new CompletionException(exc);
+                        }
+                    }, executor));
+                final List<T> output = new ArrayList<>(tasks.size());
+                for (CompletableFuture<T> future : futures) output.add(future.join());
+                return output;
+            }
+        };
+    }
+
+    /**
+     * One {@link TaskScope} per call, with a new thread of the factory per
+     * task.
+     */
+    public static ExecutionStrategy structured(final String name, final ThreadFactory threadFactory) {
+        return new ExecutionStrategy(name) {
+            @Override
+            public <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+                final List<TaskScope.Subtask<T>> subtasks = new ArrayList<>(tasks.size());
+                try (TaskScope scope = new TaskScope(threadFactory)) {
+                    for (Callable<T> task : tasks) subtasks.add(scope.fork(task));
+                    scope.join();
+                }
+                final List<T> output = new ArrayList<>(tasks.size());
+                for (TaskScope.Subtask<T> subtask : subtasks) output.add(subtask.get());
+                return output;
+            }
+        };
+    }
+
+    /**
+     * A platform thread per task, the baseline of the virtual threads.
+     */
+    public static ExecutionStrategy platformThreadPerTask() {
+        return structured("Platform thread per task", Thread::new);
+    }
+
+    /**
+     * A new executor of Executors.newVirtualThreadPerTaskExecutor, shut
+     * down when the strategy is closed.
+     *
+     * @throws UnsupportedOperationException Before JDK 21.
+     */
+    public static ExecutionStrategy virtualThreads() {
+        try {
+            return of(
+                "Virtual threads",
+                (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null),
+                true
+            );
+        } catch (NoSuchMethodException exc) {
+            throw new UnsupportedOperationException("Virtual threads need JDK 21", exc);
+        } catch (ReflectiveOperationException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    /**
+     * A structured scope whose subtasks run on virtual threads.
+     *
+     * @throws UnsupportedOperationException Before JDK 21.
+     */
+    public static ExecutionStrategy structuredVirtualThreads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final ThreadFactory threadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory")
+                .invoke(builder);
+            return structured("Structured virtual threads", threadFactory);
+        } catch (NoSuchMethodException | ClassNotFoundException exc) {
+            throw new UnsupportedOperationException("Virtual threads need JDK 21", exc);
+        } catch (ReflectiveOperationException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The strategies over the pools of the runtime, a platform
+     *         thread per task and, on JDK 21 and later, virtual threads;
+     *         close them all once done.
+     */
+    public static List<ExecutionStrategy> all(final ComputeRuntime runtime) {
+        final List<ExecutionStrategy> output = new ArrayList<>();
+        output.add(of("Fixed thread pool", runtime.executor()));
+        output.add(completableFutures("Completable futures", runtime.forkJoinPool()));
+        output.add(platformThreadPerTask());
+        if (virtualThreadsAvailable()) {
+            output.add(virtualThreads());
+            output.add(structuredVirtualThreads());
+        }
+        return output;
+    }
+}
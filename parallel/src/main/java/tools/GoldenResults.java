@@ -0,0 +1,50 @@
+package tools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * One reference answer per workload and size, kept for the life of the
+ * process. The first result computed for a key must match the reference
+ * computation bit for bit before it is recorded, and the later ones must
+ * match the recorded one, which replaces rerunning the reference when the
+ * parallel version is deterministic.
+ */
+public final class GoldenResults {
+
+    private static final Map<String, Long> RESULTS = new ConcurrentHashMap<>();
+
+    private GoldenResults() {
+    }
+
+    /**
+     * @param workload  The name of the computation.
+     * @param size      The size of the computation.
+     * @param result    A deterministic result.
+     * @param reference The sequential computation of the same result, run
+     *                  only the first time for this key.
+     * @throws RuntimeException If the result differs from the reference,
+     *                          or from the result recorded before.
+     */
+    public static void check(
+        final String workload,
+        final long size,
+        final double result,
+        final DoubleSupplier reference
+    ) {
+        final long bits = Double.doubleToRawLongBits(result);
+        final Long golden = RESULTS.computeIfAbsent(
+            workload + "#" + size, key -> Double.doubleToRawLongBits(reference.getAsDouble())
+        );
+        if (golden != bits)
+            throw new RuntimeException(
+                "Inconsistent output! " + workload + " of size " + size + ": " +
+                    result + " != " + Double.longBitsToDouble(golden)
+            );
+    }
+
+    public static void clear() {
+        RESULTS.clear();
+    }
+}
@@ -0,0 +1,49 @@
+package tools;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A RecursiveAction whose work and span are measured by {@link WorkSpan},
+ * see {@link InstrumentedRecursiveTask}.
+ */
+public abstract class InstrumentedRecursiveAction extends RecursiveAction implements WorkSpan.Instrumented {
+
+    private final WorkSpan.Node node = new WorkSpan.Node();
+
+    protected abstract void computeInstrumented();
+
+    @Override
+    protected final void compute() {
+        WorkSpan.enter(node);
+        try {
+            computeInstrumented();
+        } finally {
+            WorkSpan.exit(node);
+        }
+    }
+
+    @Override
+    public WorkSpan.Node node() {
+        return node;
+    }
+
+    protected final void spawn(final InstrumentedRecursiveAction child) {
+        WorkSpan.spawn(node, child.node());
+        child.fork();
+    }
+
+    protected final void sync(final InstrumentedRecursiveAction child) {
+        child.join();
+        WorkSpan.sync(node, child.node());
+    }
+
+    /**
+     * Instrumented invokeAll: fork all the tasks but the first, compute the
+     * first one here and join the others.
+     */
+    protected final void spawnAndSyncAll(final InstrumentedRecursiveAction[] tasks) {
+        for (int i = tasks.length - 1; i > 0; i--) spawn(tasks[i]);
+        if (tasks.length > 0) tasks[0].invoke();
+        for (int i = 1; i < tasks.length; i++) sync(tasks[i]);
+    }
+}
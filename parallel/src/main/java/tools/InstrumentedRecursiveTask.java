@@ -0,0 +1,43 @@
+package tools;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A RecursiveTask whose work and span are measured by {@link WorkSpan}.
+ * Subclasses implement {@link #computeInstrumented()} and fork and join
+ * their children with {@link #spawn} and {@link #sync}, which mark the
+ * edges of the computation graph; calling a child's compute() directly is
+ * also recorded.
+ */
+public abstract class InstrumentedRecursiveTask<V> extends RecursiveTask<V> implements WorkSpan.Instrumented {
+
+    private final WorkSpan.Node node = new WorkSpan.Node();
+
+    protected abstract V computeInstrumented();
+
+    @Override
+    protected final V compute() {
+        WorkSpan.enter(node);
+        try {
+            return computeInstrumented();
+        } finally {
+            WorkSpan.exit(node);
+        }
+    }
+
+    @Override
+    public WorkSpan.Node node() {
+        return node;
+    }
+
+    protected final void spawn(final InstrumentedRecursiveTask<?> child) {
+        WorkSpan.spawn(node, child.node());
+        child.fork();
+    }
+
+    protected final <R> R sync(final InstrumentedRecursiveTask<R> child) {
+        final R result = child.join();
+        WorkSpan.sync(node, child.node());
+        return result;
+    }
+}
@@ -1,13 +1,51 @@
 package tools;
 
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.function.BiConsumer;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToLongFunction;
 import java.util.stream.IntStream;
 
 import static tools.EvaluationTools.printlnOf;
 
 public class MatrixTools {
 
+    /**
+     * Rows of A packed per block, sized so that a packed block of A stays
+     * in the L2 cache while it is multiplied by a packed panel of B.
+     */
+    public static final int BLOCK_ROWS = 64;
+
+    /**
+     * Length of the shared dimension packed per block.
+     */
+    public static final int BLOCK_DEPTH = 256;
+
+    /**
+     * Columns of B packed per panel.
+     */
+    public static final int BLOCK_COLUMNS = 512;
+
+    /**
+     * Default probability that {@link #freivaldsCheck} accepts a wrong
+     * product.
+     */
+    public static final double FREIVALDS_ERROR_PROBABILITY = 1e-9;
+
+    /**
+     * Default relative error accepted by {@link #freivaldsCheck}; the
+     * blocked, recursive and Strassen products stay below 1e-15.
+     */
+    public static final double FREIVALDS_TOLERANCE = 1e-12;
+
+    /**
+     * Rows and columns of C accumulated in registers by the micro kernel.
+     */
+    private static final int MICRO_ROWS = 4, MICRO_COLUMNS = 4;
+
     /**
      * Create a square matrix with the given side length.
      * 
@@ -36,6 +74,39 @@ public class MatrixTools {
         return output;
     }
 
+    /**
+     * Same as {@link #createRangeMatrix(int, int)}, filled in parallel.
+     */
+    public static double[][] createRangeMatrix(
+        final ForkJoinPool forkJoinPool,
+        final int height,
+        final int width
+    ) {
+        return generateMatrix(forkJoinPool, height, width, (i, j) -> j + i * width + 1.0);
+    }
+
+    /**
+     * Create a matrix whose cell (i, j) is generator(i, j), with one band of
+     * rows per worker of the pool. Every row is allocated by the worker
+     * that fills it, in its own allocation buffer.
+     */
+    public static double[][] generateMatrix(
+        final ForkJoinPool forkJoinPool,
+        final int height,
+        final int width,
+        final ParallelFor.IndexFunction2D generator
+    ) {
+        final double[][] output = new double[height][];
+        ParallelFor.forRange(forkJoinPool, height, forkJoinPool.getParallelism(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                final double[] row = new double[width];
+                for (int j = 0; j < width; j++) row[j] = generator.applyAsDouble(i, j);
+                output[i] = row;
+            }
+        });
+        return output;
+    }
+
     /**
      * Compute the multiplication of two matrices.
      * 
@@ -64,7 +135,7 @@ public class MatrixTools {
      * @param matrix   A matrix to provide the height and width.
      */
     public static void withMatrixIndexes(
-        final BiConsumer<Integer, Integer> consumer,
+        final ParallelFor.IndexBody2D consumer,
         final double[][] matrix
     ) {
         for (int i = 0; i < heightOf(matrix); i++)
@@ -89,6 +160,496 @@ public class MatrixTools {
         return new double[heightOf(A)][widthOf(B)];
     }
 
+    public static DenseMatrix resultMatrixOf(DenseMatrix A, DenseMatrix B) {
+        if (A.width != B.height)
+            throw new RuntimeException("widthOf(A) != heightOf(B)");
+        return DenseMatrix.zeros(A.height, B.width);
+    }
+
+    /**
+     * Compute the multiplication of two matrices with the cache blocked
+     * kernel of {@link #blockedMultiplyAdd}.
+     *
+     * @param A First factor.
+     * @param B Second factor.
+     * @return The product of the two matrices.
+     */
+    public static DenseMatrix blockedProductOf(
+        final DenseMatrix A,
+        final DenseMatrix B
+    ) {
+        final DenseMatrix C = resultMatrixOf(A, B);
+        blockedMultiplyAdd(A, B, C, 0, A.height);
+        return C;
+    }
+
+    /**
+     * Same as {@link #blockedProductOf(DenseMatrix, DenseMatrix)} for matrices
+     * of rows, copying them in and out of contiguous storage.
+     */
+    public static double[][] blockedProductOf(
+        final double[][] A,
+        final double[][] B
+    ) {
+        return blockedProductOf(DenseMatrix.of(A), DenseMatrix.of(B)).toArray();
+    }
+
+    /**
+     * Compute the multiplication of two matrices with a
+     * {@link RecursiveMatrixMultiplication} on the given pool.
+     *
+     * @param forkJoinPool   The pool that runs the tasks.
+     * @param A              First factor.
+     * @param B              Second factor.
+     * @param leafSize       Blocks whose dimensions are all at most this size
+     *                       are multiplied sequentially.
+     * @param strassenCutoff Square blocks at least this large are split with
+     *                       Strassen-Winograd, NO_STRASSEN disables it.
+     * @return The product of the two matrices.
+     */
+    public static DenseMatrix recursiveProductOf(
+        final ForkJoinPool forkJoinPool,
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final int leafSize,
+        final int strassenCutoff
+    ) {
+        final DenseMatrix C = resultMatrixOf(A, B);
+        forkJoinPool.invoke(new RecursiveMatrixMultiplication(A, B, C, leafSize, strassenCutoff));
+        return C;
+    }
+
+    public static DenseMatrix recursiveProductOf(
+        final ForkJoinPool forkJoinPool,
+        final DenseMatrix A,
+        final DenseMatrix B
+    ) {
+        return recursiveProductOf(
+            forkJoinPool, A, B,
+            RecursiveMatrixMultiplication.DEFAULT_LEAF_SIZE,
+            RecursiveMatrixMultiplication.NO_STRASSEN
+        );
+    }
+
+    /**
+     * Multiply a sparse matrix by a vector, with the rows split in ranges
+     * of about the same number of nonzeros so that dense and empty rows do
+     * not unbalance the tasks.
+     *
+     * @param forkJoinPool The pool that runs the row ranges.
+     * @param A            The sparse matrix.
+     * @param x            A vector of A.width elements.
+     * @return The vector A x.
+     */
+    public static double[] sparseProductOf(
+        final ForkJoinPool forkJoinPool,
+        final CsrMatrix A,
+        final double[] x
+    ) {
+        if (A.width != x.length) throw new RuntimeException("widthOf(A) != x.length");
+        final double[] output = new double[A.height];
+        final int[] bounds = A.balancedRowPartition(numberOfSparseParts(forkJoinPool, A.height));
+        ParallelFor.forRangeChunked(forkJoinPool, bounds.length - 1, 1, (start, end) -> {
+            for (int p = start; p < end; p++) multiplyRows(A, x, output, bounds[p], bounds[p + 1]);
+        });
+        return output;
+    }
+
+    public static double[] sequentialSparseProductOf(final CsrMatrix A, final double[] x) {
+        if (A.width != x.length) throw new RuntimeException("widthOf(A) != x.length");
+        final double[] output = new double[A.height];
+        multiplyRows(A, x, output, 0, A.height);
+        return output;
+    }
+
+    /**
+     * Multiply two sparse matrices row by row (Gustavson): row i of the
+     * product is the sum of the rows of B selected by the nonzeros of row
+     * i of A, gathered in a dense accumulator of B.width elements per
+     * task. The rows are split by their number of multiplications, then
+     * the rows of every range are concatenated.
+     *
+     * @param forkJoinPool The pool that runs the row ranges.
+     * @param A            First factor.
+     * @param B            Second factor.
+     * @return The product; sums that cancel out are kept as explicit zeros.
+     */
+    public static CsrMatrix sparseProductOf(
+        final ForkJoinPool forkJoinPool,
+        final CsrMatrix A,
+        final CsrMatrix B
+    ) {
+        if (A.width != B.height) throw new RuntimeException("widthOf(A) != heightOf(B)");
+        final long[] cost = multiplicationCost(A, B);
+        final int[] bounds = partitionByCost(
+            A.height, i -> cost[i], numberOfSparseParts(forkJoinPool, A.height)
+        );
+        final int nParts = bounds.length - 1;
+        final int[] rowPointers = new int[A.height + 1];
+        final int[][] columnIndexes = new int[nParts][];
+        final double[][] values = new double[nParts][];
+        ParallelFor.forRangeChunked(forkJoinPool, nParts, 1, (start, end) -> {
+            for (int p = start; p < end; p++) multiplyPart(A, B, cost, bounds, p, rowPointers, columnIndexes, values);
+        });
+        return concatenateRows(A.height, B.width, bounds, rowPointers, columnIndexes, values);
+    }
+
+    public static CsrMatrix sequentialSparseProductOf(final CsrMatrix A, final CsrMatrix B) {
+        if (A.width != B.height) throw new RuntimeException("widthOf(A) != heightOf(B)");
+        final long[] cost = multiplicationCost(A, B);
+        final int[] bounds = {0, A.height};
+        final int[] rowPointers = new int[A.height + 1];
+        final int[][] columnIndexes = new int[1][];
+        final double[][] values = new double[1][];
+        multiplyPart(A, B, cost, bounds, 0, rowPointers, columnIndexes, values);
+        return concatenateRows(A.height, B.width, bounds, rowPointers, columnIndexes, values);
+    }
+
+    /**
+     * @return The number of multiplications of the rows [0, i) of A * B plus
+     *         i, for i in [0, A.height].
+     */
+    private static long[] multiplicationCost(final CsrMatrix A, final CsrMatrix B) {
+        final long[] cost = new long[A.height + 1];
+        for (int i = 0; i < A.height; i++) {
+            long multiplications = 1;
+            for (int k = A.rowPointers[i]; k < A.rowPointers[i + 1]; k++)
+                multiplications += B.rowPointers[A.columnIndexes[k] + 1] - B.rowPointers[A.columnIndexes[k]];
+            cost[i + 1] = cost[i] + multiplications;
+        }
+        return cost;
+    }
+
+    /**
+     * Multiply the rows of the range p into buffers sized by the number of
+     * multiplications, which bounds the number of nonzeros.
+     */
+    private static void multiplyPart(
+        final CsrMatrix A,
+        final CsrMatrix B,
+        final long[] cost,
+        final int[] bounds,
+        final int p,
+        final int[] rowPointers,
+        final int[][] columnIndexes,
+        final double[][] values
+    ) {
+        final int from = bounds[p], to = bounds[p + 1];
+        final long capacity = Math.min(cost[to] - cost[from] - (to - from), (long) (to - from) * B.width);
+        columnIndexes[p] = new int[Math.toIntExact(capacity)];
+        values[p] = new double[columnIndexes[p].length];
+        multiplyRows(A, B, from, to, rowPointers, columnIndexes[p], values[p]);
+    }
+
+    /**
+     * Split [0, n) in at most nParts ranges of about the same cost.
+     *
+     * @param n    The number of elements.
+     * @param cost The non decreasing cost of [0, i) for i in [0, n].
+     * @return The boundaries of the non empty ranges, from 0 to n.
+     */
+    static int[] partitionByCost(final int n, final IntToLongFunction cost, final int nParts) {
+        final long total = cost.applyAsLong(n);
+        final int[] bounds = new int[nParts + 1];
+        int count = 1;
+        for (int p = 1; p < nParts; p++) {
+            final long target = total * p / nParts;
+            int low = bounds[count - 1], high = n;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (cost.applyAsLong(middle) < target) low = middle + 1;
+                else high = middle;
+            }
+            if (low > bounds[count - 1] && low < n) bounds[count++] = low;
+        }
+        bounds[count++] = n;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static int numberOfSparseParts(final ForkJoinPool forkJoinPool, final int height) {
+        return Math.max(1, Math.min(height, 4 * forkJoinPool.getParallelism()));
+    }
+
+    private static void multiplyRows(
+        final CsrMatrix A,
+        final double[] x,
+        final double[] output,
+        final int rowStartInclusive,
+        final int rowEndExclusive
+    ) {
+        for (int i = rowStartInclusive; i < rowEndExclusive; i++) {
+            double sum = 0;
+            for (int k = A.rowPointers[i]; k < A.rowPointers[i + 1]; k++)
+                sum += A.values[k] * x[A.columnIndexes[k]];
+            output[i] = sum;
+        }
+    }
+
+    /**
+     * Compute the rows [rowStartInclusive, rowEndExclusive) of A * B into
+     * columnIndexes and values, and the number of nonzeros of row i into
+     * rowPointers[i + 1].
+     */
+    private static void multiplyRows(
+        final CsrMatrix A,
+        final CsrMatrix B,
+        final int rowStartInclusive,
+        final int rowEndExclusive,
+        final int[] rowPointers,
+        final int[] columnIndexes,
+        final double[] values
+    ) {
+        final double[] accumulator = new double[B.width];
+        final boolean[] occupied = new boolean[B.width];
+        int nonZeros = 0;
+        for (int i = rowStartInclusive; i < rowEndExclusive; i++) {
+            final int rowStart = nonZeros;
+            for (int k = A.rowPointers[i]; k < A.rowPointers[i + 1]; k++) {
+                final double a = A.values[k];
+                final int row = A.columnIndexes[k];
+                for (int l = B.rowPointers[row]; l < B.rowPointers[row + 1]; l++) {
+                    final int column = B.columnIndexes[l];
+                    if (!occupied[column]) {
+                        occupied[column] = true;
+                        columnIndexes[nonZeros++] = column;
+                    }
+                    accumulator[column] += a * B.values[l];
+                }
+            }
+            Arrays.sort(columnIndexes, rowStart, nonZeros);
+            for (int k = rowStart; k < nonZeros; k++) {
+                final int column = columnIndexes[k];
+                values[k] = accumulator[column];
+                accumulator[column] = 0;
+                occupied[column] = false;
+            }
+            rowPointers[i + 1] = nonZeros - rowStart;
+        }
+    }
+
+    private static CsrMatrix concatenateRows(
+        final int height,
+        final int width,
+        final int[] bounds,
+        final int[] rowPointers,
+        final int[][] columnIndexes,
+        final double[][] values
+    ) {
+        for (int i = 0; i < height; i++) rowPointers[i + 1] += rowPointers[i];
+        final int[] outputColumns = new int[rowPointers[height]];
+        final double[] outputValues = new double[rowPointers[height]];
+        for (int p = 0; p < bounds.length - 1; p++) {
+            final int offset = rowPointers[bounds[p]];
+            final int length = rowPointers[bounds[p + 1]] - offset;
+            System.arraycopy(columnIndexes[p], 0, outputColumns, offset, length);
+            System.arraycopy(values[p], 0, outputValues, offset, length);
+        }
+        return new CsrMatrix(height, width, rowPointers, outputColumns, outputValues);
+    }
+
+    /**
+     * Multiply two matrices stored in tiled files into a new one, with one
+     * task per tile of the result. A task copies the tiles A(i, k) and
+     * B(k, j) from the mapping into packed heap tiles and accumulates their
+     * product with {@link #blockedMultiplyAdd}, after asking for the pages
+     * of the next pair of tiles unless its previous prefetch is still
+     * pending, so that a slow disk does not pile up prefetches; it writes
+     * the result tile once. The heap only holds three tiles per running
+     * task, whatever the matrix size.
+     *
+     * @param forkJoinPool The pool that runs the tile tasks.
+     * @param A            First factor.
+     * @param B            Second factor, with the same tile size.
+     * @param output       The file of the product.
+     * @return The product.
+     */
+    public static TiledMatrixFile outOfCoreProductOf(
+        final ForkJoinPool forkJoinPool,
+        final TiledMatrixFile A,
+        final TiledMatrixFile B,
+        final Path output
+    ) {
+        if (A.width != B.height) throw new RuntimeException("widthOf(A) != heightOf(B)");
+        if (A.tileSize != B.tileSize) throw new RuntimeException("Different tile sizes");
+        final int tileSize = A.tileSize;
+        final TiledMatrixFile C = TiledMatrixFile.create(output, A.height, B.width, tileSize);
+        ParallelFor.forRangeChunked(forkJoinPool, C.numberOfTiles(), 1, (start, end) -> {
+            final DenseMatrix a = DenseMatrix.zeros(tileSize, tileSize);
+            final DenseMatrix b = DenseMatrix.zeros(tileSize, tileSize);
+            final DenseMatrix c = DenseMatrix.zeros(tileSize, tileSize);
+            CompletableFuture<Void> prefetched = CompletableFuture.completedFuture(null);
+            for (int t = start; t < end; t++) {
+                final int ti = t / C.tileColumns, tj = t % C.tileColumns;
+                Arrays.fill(c.data, 0);
+                for (int tk = 0; tk < A.tileColumns; tk++) {
+                    if (tk + 1 < A.tileColumns && prefetched.isDone())
+                        prefetched = CompletableFuture.allOf(A.prefetch(ti, tk + 1), B.prefetch(tk + 1, tj));
+                    A.tile(ti, tk).get(0, a.data);
+                    B.tile(tk, tj).get(0, b.data);
+                    blockedMultiplyAdd(a, b, c, 0, tileSize);
+                }
+                C.tile(ti, tj).put(0, c.data);
+            }
+        });
+        return C;
+    }
+
+    /**
+     * Add A * B to C for the rows [rowStartInclusive, rowEndExclusive).
+     * Panels of B and blocks of A are copied into contiguous buffers in the
+     * order the micro kernel reads them, and each 4x4 tile of C is
+     * accumulated in local variables across a whole block of the shared
+     * dimension before it is written back. Disjoint row ranges can run
+     * concurrently.
+     *
+     * @param A                   First factor.
+     * @param B                   Second factor.
+     * @param C                   The accumulated product.
+     * @param rowStartInclusive   First row of C to compute.
+     * @param rowEndExclusive     End of the rows of C to compute.
+     */
+    public static void blockedMultiplyAdd(
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C,
+        final int rowStartInclusive,
+        final int rowEndExclusive
+    ) {
+        if (A.width != B.height || C.height != A.height || C.width != B.width)
+            throw new RuntimeException("Inconsistent matrix dimensions");
+        final int width = B.width;
+        final int depth = A.width;
+        final double[] packedA = new double[roundUp(BLOCK_ROWS, MICRO_ROWS) * BLOCK_DEPTH];
+        final double[] packedB = new double[BLOCK_DEPTH * roundUp(Math.min(BLOCK_COLUMNS, width), MICRO_COLUMNS)];
+        final double[] edge = new double[MICRO_ROWS * MICRO_COLUMNS];
+        for (int jc = 0; jc < width; jc += BLOCK_COLUMNS) {
+            final int nc = Math.min(BLOCK_COLUMNS, width - jc);
+            for (int pc = 0; pc < depth; pc += BLOCK_DEPTH) {
+                final int kc = Math.min(BLOCK_DEPTH, depth - pc);
+                packB(B, pc, kc, jc, nc, packedB);
+                for (int ic = rowStartInclusive; ic < rowEndExclusive; ic += BLOCK_ROWS) {
+                    final int mc = Math.min(BLOCK_ROWS, rowEndExclusive - ic);
+                    packA(A, ic, mc, pc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += MICRO_COLUMNS)
+                        for (int ir = 0; ir < mc; ir += MICRO_ROWS)
+                            microKernel(
+                                kc,
+                                packedA, ir * kc,
+                                packedB, jr * kc,
+                                C, ic + ir, jc + jr,
+                                Math.min(MICRO_ROWS, mc - ir),
+                                Math.min(MICRO_COLUMNS, nc - jr),
+                                edge
+                            );
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy A[ic..ic+mc)[pc..pc+kc) into panels of MICRO_ROWS rows, each panel
+     * stored column after column and padded with zeroes.
+     */
+    private static void packA(
+        final DenseMatrix A,
+        final int ic,
+        final int mc,
+        final int pc,
+        final int kc,
+        final double[] packed
+    ) {
+        for (int ir = 0; ir < mc; ir += MICRO_ROWS) {
+            final int base = ir * kc;
+            for (int ii = 0; ii < MICRO_ROWS; ii++) {
+                if (ir + ii < mc) {
+                    final int row = A.index(ic + ir + ii, pc);
+                    for (int p = 0; p < kc; p++)
+                        packed[base + p * MICRO_ROWS + ii] = A.data[row + p];
+                } else {
+                    for (int p = 0; p < kc; p++)
+                        packed[base + p * MICRO_ROWS + ii] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy B[pc..pc+kc)[jc..jc+nc) into panels of MICRO_COLUMNS columns, each
+     * panel stored row after row and padded with zeroes.
+     */
+    private static void packB(
+        final DenseMatrix B,
+        final int pc,
+        final int kc,
+        final int jc,
+        final int nc,
+        final double[] packed
+    ) {
+        for (int p = 0; p < kc; p++) {
+            final int row = B.index(pc + p, jc);
+            for (int jr = 0; jr < nc; jr += MICRO_COLUMNS) {
+                final int base = jr * kc + p * MICRO_COLUMNS;
+                for (int jj = 0; jj < MICRO_COLUMNS; jj++)
+                    packed[base + jj] = jr + jj < nc ? B.data[row + jr + jj] : 0;
+            }
+        }
+    }
+
+    private static void microKernel(
+        final int kc,
+        final double[] a,
+        int aIndex,
+        final double[] b,
+        int bIndex,
+        final DenseMatrix C,
+        final int i,
+        final int j,
+        final int rows,
+        final int columns,
+        final double[] edge
+    ) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++) {
+            final double a0 = a[aIndex], a1 = a[aIndex + 1], a2 = a[aIndex + 2], a3 = a[aIndex + 3];
+            final double b0 = b[bIndex], b1 = b[bIndex + 1], b2 = b[bIndex + 2], b3 = b[bIndex + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+            aIndex += MICRO_ROWS;
+            bIndex += MICRO_COLUMNS;
+        }
+        final double[] c = C.data;
+        final int stride = C.rowStride;
+        if (rows == MICRO_ROWS && columns == MICRO_COLUMNS) {
+            int row = C.index(i, j);
+            c[row] += c00; c[row + 1] += c01; c[row + 2] += c02; c[row + 3] += c03;
+            row += stride;
+            c[row] += c10; c[row + 1] += c11; c[row + 2] += c12; c[row + 3] += c13;
+            row += stride;
+            c[row] += c20; c[row + 1] += c21; c[row + 2] += c22; c[row + 3] += c23;
+            row += stride;
+            c[row] += c30; c[row + 1] += c31; c[row + 2] += c32; c[row + 3] += c33;
+        } else {
+            edge[0] = c00; edge[1] = c01; edge[2] = c02; edge[3] = c03;
+            edge[4] = c10; edge[5] = c11; edge[6] = c12; edge[7] = c13;
+            edge[8] = c20; edge[9] = c21; edge[10] = c22; edge[11] = c23;
+            edge[12] = c30; edge[13] = c31; edge[14] = c32; edge[15] = c33;
+            for (int ii = 0; ii < rows; ii++) {
+                final int row = C.index(i + ii, j);
+                for (int jj = 0; jj < columns; jj++)
+                    c[row + jj] += edge[ii * MICRO_COLUMNS + jj];
+            }
+        }
+    }
+
+    private static int roundUp(final int value, final int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
     public static int numberOfElementsIn(double[][] matrix) {
         return heightOf(matrix) * widthOf(matrix);
     }
@@ -186,4 +747,141 @@ public class MatrixTools {
                     return false;
         return true;
     }
+
+    /**
+     * Compare two matrices allowing a relative rounding error per cell, for
+     * products whose sums were accumulated in a different order.
+     *
+     * @param tolerance The accepted |a - b| / max(|a|, |b|).
+     */
+    public static boolean matrixEquals(double[][] A, double[][] B, double tolerance) {
+        if (A == B) return true;
+        if (A == null ||
+            B == null ||
+            heightOf(A) != heightOf(B) ||
+            widthOf(A) != widthOf(B)
+        ) return false;
+        for (int i = 0; i < heightOf(A); i++)
+            for (int j = 0; j < widthOf(A); j++) {
+                final double a = A[i][j], b = B[i][j];
+                if (a != b && Math.abs(a - b) > tolerance * Math.max(Math.abs(a), Math.abs(b)))
+                    return false;
+            }
+        return true;
+    }
+
+    public static boolean matrixEquals(DenseMatrix A, DenseMatrix B, double tolerance) {
+        if (A == B) return true;
+        if (A == null || B == null || A.height != B.height || A.width != B.width) return false;
+        for (int i = 0; i < A.height; i++)
+            for (int j = 0; j < A.width; j++) {
+                final double a = A.get(i, j), b = B.get(i, j);
+                if (a != b && Math.abs(a - b) > tolerance * Math.max(Math.abs(a), Math.abs(b)))
+                    return false;
+            }
+        return true;
+    }
+
+    /**
+     * Check C = A * B with Freivalds' algorithm: for random vectors r of
+     * +1 and -1, compare A (B r) with C r in O(k n^2) instead of computing
+     * the product again. A wrong C passes one vector with probability at
+     * most 1 / 2, so log2(1 / errorProbability) vectors are drawn, and all
+     * of them are multiplied in one pass over each matrix.
+     * <p>
+     * Floating-point results are accepted when every element of A (B r) -
+     * C r is within tolerance times the same element of |A| (|B| |r|), the
+     * scale of the rounding errors of both the product and the check.
+     *
+     * @param forkJoinPool     The pool that runs the matrix vector products.
+     * @param errorProbability The accepted probability of missing a wrong C.
+     * @param tolerance        The accepted relative error, for example
+     *                         {@link #FREIVALDS_TOLERANCE}.
+     * @param seed             The seed of the random vectors.
+     * @return Whether C is the product of A and B, up to the error probability.
+     */
+    public static boolean freivaldsCheck(
+        final ForkJoinPool forkJoinPool,
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C,
+        final double errorProbability,
+        final double tolerance,
+        final long seed
+    ) {
+        if (A.width != B.height || C.height != A.height || C.width != B.width) return false;
+        if (!(errorProbability > 0 && errorProbability < 1))
+            throw new IllegalArgumentException("errorProbability must be in (0, 1)");
+        final int k = (int) Math.ceil(Math.log(1 / errorProbability) / Math.log(2));
+        final SplittableRandom random = new SplittableRandom(seed);
+        final double[] R = new double[B.width * k];
+        for (int i = 0; i < R.length; i++) R[i] = random.nextBoolean() ? 1 : -1;
+        final double[] ones = new double[B.width];
+        Arrays.fill(ones, 1);
+
+        final double[] BR = productWithColumns(forkJoinPool, B, R, k, false);
+        final double[] ABR = productWithColumns(forkJoinPool, A, BR, k, false);
+        final double[] CR = productWithColumns(forkJoinPool, C, R, k, false);
+        final double[] bound = productWithColumns(
+            forkJoinPool, A, productWithColumns(forkJoinPool, B, ones, 1, true), 1, true
+        );
+        for (int i = 0; i < A.height; i++)
+            for (int r = 0; r < k; r++) {
+                final double difference = Math.abs(ABR[i * k + r] - CR[i * k + r]);
+                if (!(difference <= tolerance * bound[i])) return false;
+            }
+        return true;
+    }
+
+    public static boolean freivaldsCheck(
+        final ForkJoinPool forkJoinPool,
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C
+    ) {
+        return freivaldsCheck(
+            forkJoinPool, A, B, C, FREIVALDS_ERROR_PROBABILITY, FREIVALDS_TOLERANCE, System.nanoTime()
+        );
+    }
+
+    /**
+     * Same as {@link #freivaldsCheck(ForkJoinPool, DenseMatrix, DenseMatrix, DenseMatrix)}
+     * for matrices of rows, which are copied into contiguous storage.
+     */
+    public static boolean freivaldsCheck(
+        final ForkJoinPool forkJoinPool,
+        final double[][] A,
+        final double[][] B,
+        final double[][] C
+    ) {
+        if (A == null || B == null || C == null) return false;
+        return freivaldsCheck(forkJoinPool, DenseMatrix.of(A), DenseMatrix.of(B), DenseMatrix.of(C));
+    }
+
+    /**
+     * Multiply M by the k columns of X, stored row-major as a M.width by k
+     * matrix, in parallel over the rows of M.
+     *
+     * @param absolute Whether to multiply |M| instead of M.
+     * @return The M.height by k product, row-major.
+     */
+    private static double[] productWithColumns(
+        final ForkJoinPool forkJoinPool,
+        final DenseMatrix M,
+        final double[] X,
+        final int k,
+        final boolean absolute
+    ) {
+        final double[] output = new double[M.height * k];
+        ParallelFor.forRangeChunked(forkJoinPool, M.height, BLOCK_ROWS, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                final int row = M.index(i, 0);
+                for (int j = 0; j < M.width; j++) {
+                    final double m = absolute ? Math.abs(M.data[row + j]) : M.data[row + j];
+                    for (int r = 0; r < k; r++) output[i * k + r] += m * X[j * k + r];
+                }
+            }
+        });
+        return output;
+    }
 }
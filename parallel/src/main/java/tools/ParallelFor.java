@@ -0,0 +1,215 @@
+package tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import static tools.EvaluationTools.getChunkEndExclusive;
+import static tools.EvaluationTools.getChunkSize;
+import static tools.EvaluationTools.getChunkStartInclusive;
+
+/**
+ * Parallel loops over int indexes without boxing. The index space is cut
+ * into chunks with {@link EvaluationTools#getChunkStartInclusive} and
+ * {@link EvaluationTools#getChunkEndExclusive}; the chunks are forked as a
+ * balanced tree of tasks so the last chunk starts after O(log nChunks)
+ * forks. Bodies that receive a whole range run their own loop, which keeps
+ * the hot loop free of calls through an interface.
+ */
+public final class ParallelFor {
+
+    private ParallelFor() {
+    }
+
+    /**
+     * Body of a loop over the indexes [startInclusive, endExclusive).
+     */
+    @FunctionalInterface
+    public interface RangeBody {
+        void apply(int startInclusive, int endExclusive);
+    }
+
+    /**
+     * Body of a loop over the cells (i, j) of a matrix.
+     */
+    @FunctionalInterface
+    public interface IndexBody2D {
+        void accept(int i, int j);
+    }
+
+    /**
+     * The value of the cell (i, j) of a matrix.
+     */
+    @FunctionalInterface
+    public interface IndexFunction2D {
+        double applyAsDouble(int i, int j);
+    }
+
+    /**
+     * Body of a loop over the rows [rowStartInclusive, rowEndExclusive) and
+     * the columns [columnStartInclusive, columnEndExclusive) of a matrix.
+     */
+    @FunctionalInterface
+    public interface RangeBody2D {
+        void apply(
+            int rowStartInclusive,
+            int rowEndExclusive,
+            int columnStartInclusive,
+            int columnEndExclusive
+        );
+    }
+
+    /**
+     * Split [0, nElements) in nChunks chunks of equal size and run the body
+     * once per chunk on the given pool.
+     *
+     * @param forkJoinPool The pool that runs the chunks.
+     * @param nElements    The number of indexes.
+     * @param nChunks      The number of chunks.
+     * @param body         The loop over one chunk.
+     */
+    public static void forRange(
+        final ForkJoinPool forkJoinPool,
+        final int nElements,
+        final int nChunks,
+        final RangeBody body
+    ) {
+        if (nChunks < 1) throw new IllegalArgumentException("nChunks < 1");
+        if (nElements <= 0) return;
+        final int chunks = Math.min(nChunks, nElements);
+        if (chunks == 1) {
+            body.apply(0, nElements);
+            return;
+        }
+        forkJoinPool.invoke(new ChunkTask(0, chunks, chunks, nElements, body));
+    }
+
+    public static void forRange(final int nElements, final int nChunks, final RangeBody body) {
+        forRange(ForkJoinPool.commonPool(), nElements, nChunks, body);
+    }
+
+    /**
+     * Split [0, nElements) in chunks of chunkSize indexes, many more than
+     * the workers, so that work stealing balances loops whose iterations
+     * have different costs.
+     */
+    public static void forRangeChunked(
+        final ForkJoinPool forkJoinPool,
+        final int nElements,
+        final int chunkSize,
+        final RangeBody body
+    ) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize < 1");
+        if (nElements <= 0) return;
+        forRange(forkJoinPool, nElements, getChunkSize(chunkSize, nElements), body);
+    }
+
+    public static void forEach(
+        final ForkJoinPool forkJoinPool,
+        final int nElements,
+        final int nChunks,
+        final IntConsumer body
+    ) {
+        forRange(forkJoinPool, nElements, nChunks, (start, end) -> {
+            for (int i = start; i < end; i++) body.accept(i);
+        });
+    }
+
+    public static void forEach(final int nElements, final int nChunks, final IntConsumer body) {
+        forEach(ForkJoinPool.commonPool(), nElements, nChunks, body);
+    }
+
+    /**
+     * Run the body for every cell of a height x width matrix, splitting the
+     * rows in nChunks chunks.
+     */
+    public static void forEach2D(
+        final ForkJoinPool forkJoinPool,
+        final int height,
+        final int width,
+        final int nChunks,
+        final IndexBody2D body
+    ) {
+        forRange(forkJoinPool, height, nChunks, (start, end) -> {
+            for (int i = start; i < end; i++)
+                for (int j = 0; j < width; j++)
+                    body.accept(i, j);
+        });
+    }
+
+    public static void forEach2D(
+        final int height,
+        final int width,
+        final int nChunks,
+        final IndexBody2D body
+    ) {
+        forEach2D(ForkJoinPool.commonPool(), height, width, nChunks, body);
+    }
+
+    /**
+     * Cut a height x width matrix in tiles of at most tileHeight x tileWidth
+     * cells and run the body once per tile.
+     */
+    public static void forTiles(
+        final ForkJoinPool forkJoinPool,
+        final int height,
+        final int width,
+        final int tileHeight,
+        final int tileWidth,
+        final RangeBody2D body
+    ) {
+        if (tileHeight < 1 || tileWidth < 1) throw new IllegalArgumentException("Empty tiles");
+        if (height <= 0 || width <= 0) return;
+        final int tileRows = getChunkSize(tileHeight, height);
+        final int tileColumns = getChunkSize(tileWidth, width);
+        forRange(forkJoinPool, tileRows * tileColumns, tileRows * tileColumns, (start, end) -> {
+            for (int t = start; t < end; t++) {
+                final int row = t / tileColumns * tileHeight;
+                final int column = t % tileColumns * tileWidth;
+                body.apply(
+                    row, Math.min(row + tileHeight, height),
+                    column, Math.min(column + tileWidth, width)
+                );
+            }
+        });
+    }
+
+    /**
+     * Forks the chunks [chunkStart, chunkEnd) as a binary tree.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+
+        private final int chunkStart, chunkEnd, nChunks, nElements;
+
+        private final RangeBody body;
+
+        private ChunkTask(
+            final int chunkStart,
+            final int chunkEnd,
+            final int nChunks,
+            final int nElements,
+            final RangeBody body
+        ) {
+            this.chunkStart = chunkStart;
+            this.chunkEnd = chunkEnd;
+            this.nChunks = nChunks;
+            this.nElements = nElements;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (chunkEnd - chunkStart == 1) {
+                final int start = getChunkStartInclusive(chunkStart, nChunks, nElements);
+                final int end = getChunkEndExclusive(chunkStart, nChunks, nElements);
+                if (start < end) body.apply(start, end);
+                return;
+            }
+            final int mid = (chunkStart + chunkEnd) >>> 1;
+            invokeAll(
+                new ChunkTask(chunkStart, mid, nChunks, nElements, body),
+                new ChunkTask(mid, chunkEnd, nChunks, nElements, body)
+            );
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Map-reduce over a range of a primitive array on a ForkJoinPool. Instead
+ * of a fixed sequential threshold, a task keeps forking right halves of its
+ * range only while its worker has few queued tasks
+ * ({@link java.util.concurrent.ForkJoinTask#getSurplusQueuedTaskCount()}),
+ * so a busy pool stops splitting early and an idle one splits further.
+ * Right halves are reduced in index order, which only requires the
+ * combiner to be associative.
+ */
+public final class ParallelReduction {
+
+    /**
+     * Ranges of at most this many elements are never split.
+     */
+    public static final int MINIMUM_GRAIN = 1 << 12;
+
+    /**
+     * Splitting stops when the worker has more than this many queued tasks
+     * that nobody has stolen yet.
+     */
+    public static final int SURPLUS_THRESHOLD = 3;
+
+    private ParallelReduction() {
+    }
+
+    /**
+     * Reduce mapper(inputs[i]) for i in [startIndexInclusive,
+     * endIndexExclusive) with the combiner.
+     *
+     * @param forkJoinPool        The pool that runs the reduction.
+     * @param inputs              The array to reduce.
+     * @param startIndexInclusive Beginning of the sub array.
+     * @param endIndexExclusive   End of the sub array.
+     * @param identity            The identity of the combiner.
+     * @param mapper              The function applied to each element.
+     * @param combiner            An associative function.
+     * @return The reduction of the mapped elements.
+     */
+    public static double reduce(
+        final ForkJoinPool forkJoinPool,
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final double identity,
+        final DoubleUnaryOperator mapper,
+        final DoubleBinaryOperator combiner
+    ) {
+        if (startIndexInclusive < 0 || endIndexExclusive > inputs.length)
+            throw new IndexOutOfBoundsException();
+        if (forkJoinPool.getParallelism() == 1 || endIndexExclusive - startIndexInclusive <= MINIMUM_GRAIN)
+            return sequentialReduce(inputs, startIndexInclusive, endIndexExclusive, identity, mapper, combiner);
+        final DoubleReduceTask task = new DoubleReduceTask(
+            inputs, startIndexInclusive, endIndexExclusive, identity, mapper, combiner, null
+        );
+        forkJoinPool.invoke(task);
+        return task.result;
+    }
+
+    public static double reduce(
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final double identity,
+        final DoubleUnaryOperator mapper,
+        final DoubleBinaryOperator combiner
+    ) {
+        return reduce(
+            ForkJoinPool.commonPool(),
+            inputs, startIndexInclusive, endIndexExclusive,
+            identity, mapper, combiner
+        );
+    }
+
+    public static double sequentialReduce(
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final double identity,
+        final DoubleUnaryOperator mapper,
+        final DoubleBinaryOperator combiner
+    ) {
+        double output = identity;
+        for (int i = startIndexInclusive; i < endIndexExclusive; i++)
+            output = combiner.applyAsDouble(output, mapper.applyAsDouble(inputs[i]));
+        return output;
+    }
+
+    /**
+     * Same as {@link #reduce(ForkJoinPool, double[], int, int, double,
+     * DoubleUnaryOperator, DoubleBinaryOperator)} for long arrays.
+     */
+    public static long reduce(
+        final ForkJoinPool forkJoinPool,
+        final long[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final long identity,
+        final LongUnaryOperator mapper,
+        final LongBinaryOperator combiner
+    ) {
+        if (startIndexInclusive < 0 || endIndexExclusive > inputs.length)
+            throw new IndexOutOfBoundsException();
+        if (forkJoinPool.getParallelism() == 1 || endIndexExclusive - startIndexInclusive <= MINIMUM_GRAIN)
+            return sequentialReduce(inputs, startIndexInclusive, endIndexExclusive, identity, mapper, combiner);
+        final LongReduceTask task = new LongReduceTask(
+            inputs, startIndexInclusive, endIndexExclusive, identity, mapper, combiner, null
+        );
+        forkJoinPool.invoke(task);
+        return task.result;
+    }
+
+    public static long sequentialReduce(
+        final long[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final long identity,
+        final LongUnaryOperator mapper,
+        final LongBinaryOperator combiner
+    ) {
+        long output = identity;
+        for (int i = startIndexInclusive; i < endIndexExclusive; i++)
+            output = combiner.applyAsLong(output, mapper.applyAsLong(inputs[i]));
+        return output;
+    }
+
+    private static final class DoubleReduceTask extends RecursiveAction {
+
+        private final double[] inputs;
+        private final int startIndexInclusive, endIndexExclusive;
+        private final double identity;
+        private final DoubleUnaryOperator mapper;
+        private final DoubleBinaryOperator combiner;
+
+        /**
+         * The right half forked before this one by the same parent.
+         */
+        private final DoubleReduceTask next;
+
+        private double result;
+
+        private DoubleReduceTask(
+            final double[] inputs,
+            final int startIndexInclusive,
+            final int endIndexExclusive,
+            final double identity,
+            final DoubleUnaryOperator mapper,
+            final DoubleBinaryOperator combiner,
+            final DoubleReduceTask next
+        ) {
+            this.inputs = inputs;
+            this.startIndexInclusive = startIndexInclusive;
+            this.endIndexExclusive = endIndexExclusive;
+            this.identity = identity;
+            this.mapper = mapper;
+            this.combiner = combiner;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            final int start = startIndexInclusive;
+            int end = endIndexExclusive;
+            DoubleReduceTask right = null;
+            while (end - start > MINIMUM_GRAIN && getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+                final int mid = (start + end) >>> 1;
+                right = new DoubleReduceTask(inputs, mid, end, identity, mapper, combiner, right);
+                right.fork();
+                end = mid;
+            }
+            double output = sequentialReduce(inputs, start, end, identity, mapper, combiner);
+            while (right != null) {
+                if (right.tryUnfork()) right.compute();
+                else right.join();
+                output = combiner.applyAsDouble(output, right.result);
+                right = right.next;
+            }
+            result = output;
+        }
+    }
+
+    private static final class LongReduceTask extends RecursiveAction {
+
+        private final long[] inputs;
+        private final int startIndexInclusive, endIndexExclusive;
+        private final long identity;
+        private final LongUnaryOperator mapper;
+        private final LongBinaryOperator combiner;
+        private final LongReduceTask next;
+
+        private long result;
+
+        private LongReduceTask(
+            final long[] inputs,
+            final int startIndexInclusive,
+            final int endIndexExclusive,
+            final long identity,
+            final LongUnaryOperator mapper,
+            final LongBinaryOperator combiner,
+            final LongReduceTask next
+        ) {
+            this.inputs = inputs;
+            this.startIndexInclusive = startIndexInclusive;
+            this.endIndexExclusive = endIndexExclusive;
+            this.identity = identity;
+            this.mapper = mapper;
+            this.combiner = combiner;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            final int start = startIndexInclusive;
+            int end = endIndexExclusive;
+            LongReduceTask right = null;
+            while (end - start > MINIMUM_GRAIN && getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+                final int mid = (start + end) >>> 1;
+                right = new LongReduceTask(inputs, mid, end, identity, mapper, combiner, right);
+                right.fork();
+                end = mid;
+            }
+            long output = sequentialReduce(inputs, start, end, identity, mapper, combiner);
+            while (right != null) {
+                if (right.tryUnfork()) right.compute();
+                else right.join();
+                output = combiner.applyAsLong(output, right.result);
+                right = right.next;
+            }
+            result = output;
+        }
+    }
+}
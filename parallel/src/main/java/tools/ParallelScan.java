@@ -0,0 +1,441 @@
+package tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+import static tools.EvaluationTools.getChunkSize;
+
+/**
+ * Parallel prefix scans of primitive arrays with any associative operator.
+ * The array is cut in nChunks chunks and scanned in two parallel passes:
+ * the first reduces every chunk, a sequential scan of the nChunks
+ * reductions gives the carry into every chunk, and the second scans every
+ * chunk from its carry. The input is read twice and the output written
+ * once, and the operator never needs to be commutative.
+ * <p>
+ * The inclusive scan sets outputs[i] = inputs[0] op ... op inputs[i]; the
+ * exclusive scan sets outputs[i] = identity op inputs[0] op ... op
+ * inputs[i - 1] and returns the reduction of the whole array, so that it
+ * directly gives offsets, as the rowPointers of a {@link CsrMatrix}. The
+ * outputs may be the inputs. Floating point sums are only associative up
+ * to rounding, so a parallel double scan can differ from the sequential
+ * one in the last bits.
+ */
+public final class ParallelScan {
+
+    /**
+     * Arrays of at most this many elements are scanned sequentially.
+     */
+    public static final int MINIMUM_GRAIN = 1 << 12;
+
+    private ParallelScan() {
+    }
+
+    public static void inclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final double[] inputs,
+        final double[] outputs,
+        final int nChunks,
+        final DoubleBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks)) {
+            sequentialInclusiveScan(inputs, outputs, operator);
+            return;
+        }
+        final int chunkSize = getChunkSize(nChunks, n);
+        final double[] carries = new double[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length - 1, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        sequentialInclusiveScan(carries, carries, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) -> {
+            final int chunk = start / chunkSize;
+            if (chunk == 0) sequentialInclusiveScan(inputs, outputs, start, end, operator);
+            else scanFrom(inputs, outputs, start, end, carries[chunk - 1], operator);
+        });
+    }
+
+    /**
+     * @return The reduction of all the inputs, identity for an empty array.
+     */
+    public static double exclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final double[] inputs,
+        final double[] outputs,
+        final double identity,
+        final int nChunks,
+        final DoubleBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks))
+            return sequentialExclusiveScan(inputs, outputs, identity, operator);
+        final int chunkSize = getChunkSize(nChunks, n);
+        final double[] carries = new double[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        final double total = sequentialExclusiveScan(carries, carries, identity, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            exclusiveScanFrom(inputs, outputs, start, end, carries[start / chunkSize], operator)
+        );
+        return total;
+    }
+
+    public static void sequentialInclusiveScan(
+        final double[] inputs,
+        final double[] outputs,
+        final DoubleBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        sequentialInclusiveScan(inputs, outputs, 0, inputs.length, operator);
+    }
+
+    public static double sequentialExclusiveScan(
+        final double[] inputs,
+        final double[] outputs,
+        final double identity,
+        final DoubleBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        return exclusiveScanFrom(inputs, outputs, 0, inputs.length, identity, operator);
+    }
+
+    private static void sequentialInclusiveScan(
+        final double[] inputs,
+        final double[] outputs,
+        final int start,
+        final int end,
+        final DoubleBinaryOperator operator
+    ) {
+        if (start == end) return;
+        outputs[start] = inputs[start];
+        scanFrom(inputs, outputs, start + 1, end, inputs[start], operator);
+    }
+
+    private static void scanFrom(
+        final double[] inputs,
+        final double[] outputs,
+        final int start,
+        final int end,
+        final double carry,
+        final DoubleBinaryOperator operator
+    ) {
+        double output = carry;
+        for (int i = start; i < end; i++) {
+            output = operator.applyAsDouble(output, inputs[i]);
+            outputs[i] = output;
+        }
+    }
+
+    private static double exclusiveScanFrom(
+        final double[] inputs,
+        final double[] outputs,
+        final int start,
+        final int end,
+        final double carry,
+        final DoubleBinaryOperator operator
+    ) {
+        double output = carry;
+        for (int i = start; i < end; i++) {
+            final double input = inputs[i];
+            outputs[i] = output;
+            output = operator.applyAsDouble(output, input);
+        }
+        return output;
+    }
+
+    private static double reduce(
+        final double[] inputs,
+        final int start,
+        final int end,
+        final DoubleBinaryOperator operator
+    ) {
+        double output = inputs[start];
+        for (int i = start + 1; i < end; i++) output = operator.applyAsDouble(output, inputs[i]);
+        return output;
+    }
+
+    /**
+     * Same as {@link #inclusiveScan(ForkJoinPool, double[], double[], int,
+     * DoubleBinaryOperator)} for int arrays.
+     */
+    public static void inclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final int[] inputs,
+        final int[] outputs,
+        final int nChunks,
+        final IntBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks)) {
+            sequentialInclusiveScan(inputs, outputs, operator);
+            return;
+        }
+        final int chunkSize = getChunkSize(nChunks, n);
+        final int[] carries = new int[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length - 1, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        sequentialInclusiveScan(carries, carries, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) -> {
+            final int chunk = start / chunkSize;
+            if (chunk == 0) sequentialInclusiveScan(inputs, outputs, start, end, operator);
+            else scanFrom(inputs, outputs, start, end, carries[chunk - 1], operator);
+        });
+    }
+
+    public static int exclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final int[] inputs,
+        final int[] outputs,
+        final int identity,
+        final int nChunks,
+        final IntBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks))
+            return sequentialExclusiveScan(inputs, outputs, identity, operator);
+        final int chunkSize = getChunkSize(nChunks, n);
+        final int[] carries = new int[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        final int total = sequentialExclusiveScan(carries, carries, identity, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            exclusiveScanFrom(inputs, outputs, start, end, carries[start / chunkSize], operator)
+        );
+        return total;
+    }
+
+    public static void sequentialInclusiveScan(
+        final int[] inputs,
+        final int[] outputs,
+        final IntBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        sequentialInclusiveScan(inputs, outputs, 0, inputs.length, operator);
+    }
+
+    public static int sequentialExclusiveScan(
+        final int[] inputs,
+        final int[] outputs,
+        final int identity,
+        final IntBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        return exclusiveScanFrom(inputs, outputs, 0, inputs.length, identity, operator);
+    }
+
+    private static void sequentialInclusiveScan(
+        final int[] inputs,
+        final int[] outputs,
+        final int start,
+        final int end,
+        final IntBinaryOperator operator
+    ) {
+        if (start == end) return;
+        outputs[start] = inputs[start];
+        scanFrom(inputs, outputs, start + 1, end, inputs[start], operator);
+    }
+
+    private static void scanFrom(
+        final int[] inputs,
+        final int[] outputs,
+        final int start,
+        final int end,
+        final int carry,
+        final IntBinaryOperator operator
+    ) {
+        int output = carry;
+        for (int i = start; i < end; i++) {
+            output = operator.applyAsInt(output, inputs[i]);
+            outputs[i] = output;
+        }
+    }
+
+    private static int exclusiveScanFrom(
+        final int[] inputs,
+        final int[] outputs,
+        final int start,
+        final int end,
+        final int carry,
+        final IntBinaryOperator operator
+    ) {
+        int output = carry;
+        for (int i = start; i < end; i++) {
+            final int input = inputs[i];
+            outputs[i] = output;
+            output = operator.applyAsInt(output, input);
+        }
+        return output;
+    }
+
+    private static int reduce(
+        final int[] inputs,
+        final int start,
+        final int end,
+        final IntBinaryOperator operator
+    ) {
+        int output = inputs[start];
+        for (int i = start + 1; i < end; i++) output = operator.applyAsInt(output, inputs[i]);
+        return output;
+    }
+
+    /**
+     * Same as {@link #inclusiveScan(ForkJoinPool, double[], double[], int,
+     * DoubleBinaryOperator)} for long arrays.
+     */
+    public static void inclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final long[] inputs,
+        final long[] outputs,
+        final int nChunks,
+        final LongBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks)) {
+            sequentialInclusiveScan(inputs, outputs, operator);
+            return;
+        }
+        final int chunkSize = getChunkSize(nChunks, n);
+        final long[] carries = new long[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length - 1, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        sequentialInclusiveScan(carries, carries, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) -> {
+            final int chunk = start / chunkSize;
+            if (chunk == 0) sequentialInclusiveScan(inputs, outputs, start, end, operator);
+            else scanFrom(inputs, outputs, start, end, carries[chunk - 1], operator);
+        });
+    }
+
+    public static long exclusiveScan(
+        final ForkJoinPool forkJoinPool,
+        final long[] inputs,
+        final long[] outputs,
+        final long identity,
+        final int nChunks,
+        final LongBinaryOperator operator
+    ) {
+        final int n = checkLengths(inputs.length, outputs.length, nChunks);
+        if (isSequential(forkJoinPool, n, nChunks))
+            return sequentialExclusiveScan(inputs, outputs, identity, operator);
+        final int chunkSize = getChunkSize(nChunks, n);
+        final long[] carries = new long[getChunkSize(chunkSize, n)];
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            carries[start / chunkSize] = reduce(inputs, start, end, operator)
+        );
+        final long total = sequentialExclusiveScan(carries, carries, identity, operator);
+        forEachChunk(forkJoinPool, n, chunkSize, carries.length, (start, end) ->
+            exclusiveScanFrom(inputs, outputs, start, end, carries[start / chunkSize], operator)
+        );
+        return total;
+    }
+
+    public static void sequentialInclusiveScan(
+        final long[] inputs,
+        final long[] outputs,
+        final LongBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        sequentialInclusiveScan(inputs, outputs, 0, inputs.length, operator);
+    }
+
+    public static long sequentialExclusiveScan(
+        final long[] inputs,
+        final long[] outputs,
+        final long identity,
+        final LongBinaryOperator operator
+    ) {
+        checkLengths(inputs.length, outputs.length, 1);
+        return exclusiveScanFrom(inputs, outputs, 0, inputs.length, identity, operator);
+    }
+
+    private static void sequentialInclusiveScan(
+        final long[] inputs,
+        final long[] outputs,
+        final int start,
+        final int end,
+        final LongBinaryOperator operator
+    ) {
+        if (start == end) return;
+        outputs[start] = inputs[start];
+        scanFrom(inputs, outputs, start + 1, end, inputs[start], operator);
+    }
+
+    private static void scanFrom(
+        final long[] inputs,
+        final long[] outputs,
+        final int start,
+        final int end,
+        final long carry,
+        final LongBinaryOperator operator
+    ) {
+        long output = carry;
+        for (int i = start; i < end; i++) {
+            output = operator.applyAsLong(output, inputs[i]);
+            outputs[i] = output;
+        }
+    }
+
+    private static long exclusiveScanFrom(
+        final long[] inputs,
+        final long[] outputs,
+        final int start,
+        final int end,
+        final long carry,
+        final LongBinaryOperator operator
+    ) {
+        long output = carry;
+        for (int i = start; i < end; i++) {
+            final long input = inputs[i];
+            outputs[i] = output;
+            output = operator.applyAsLong(output, input);
+        }
+        return output;
+    }
+
+    private static long reduce(
+        final long[] inputs,
+        final int start,
+        final int end,
+        final LongBinaryOperator operator
+    ) {
+        long output = inputs[start];
+        for (int i = start + 1; i < end; i++) output = operator.applyAsLong(output, inputs[i]);
+        return output;
+    }
+
+    private static int checkLengths(final int inputLength, final int outputLength, final int nChunks) {
+        if (nChunks < 1) throw new IllegalArgumentException("nChunks < 1");
+        if (inputLength != outputLength) throw new IllegalArgumentException("inputs and outputs differ in length");
+        return inputLength;
+    }
+
+    private static boolean isSequential(final ForkJoinPool forkJoinPool, final int n, final int nChunks) {
+        return nChunks == 1 || forkJoinPool.getParallelism() == 1 || n <= MINIMUM_GRAIN;
+    }
+
+    /**
+     * Run the body on the first nChunks chunks of chunkSize elements of
+     * [0, n), one task per chunk.
+     */
+    private static void forEachChunk(
+        final ForkJoinPool forkJoinPool,
+        final int n,
+        final int chunkSize,
+        final int nChunks,
+        final ParallelFor.RangeBody body
+    ) {
+        final IntConsumer chunkBody = chunk -> {
+            final int start = chunk * chunkSize;
+            body.apply(start, Math.min(start + chunkSize, n));
+        };
+        ParallelFor.forEach(forkJoinPool, nChunks, nChunks, chunkBody);
+    }
+}
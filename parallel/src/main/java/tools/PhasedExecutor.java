@@ -0,0 +1,212 @@
+package tools;
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import static tools.EvaluationTools.printer;
+
+/**
+ * Runs SPMD style jobs, made of phases separated by barriers, on a fixed
+ * set of worker threads that are started once and reused by every job.
+ * Worker i runs every phase with the argument i.
+ * <p>
+ * A fuzzy phase is split in two parts: the shared part, whose results the
+ * other workers read in the next phase, and a local part, which only the
+ * same worker reads later. The worker arrives at the barrier after the
+ * shared part and runs the local part before waiting for the others, so
+ * the local work overlaps the wait.
+ */
+public class PhasedExecutor implements AutoCloseable {
+
+    private final Thread[] workers;
+
+    /**
+     * The submitting thread and the workers meet here to start and to
+     * finish each job.
+     */
+    private final Phaser dispatch;
+
+    private volatile Phase[] job;
+
+    private volatile Phaser barrier;
+
+    private volatile PhaseTimings timings;
+
+    private volatile boolean closed;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public PhasedExecutor(final int nWorkers) {
+        this("phased", nWorkers);
+    }
+
+    /**
+     * @param name     The prefix of the worker names.
+     * @param nWorkers The number of workers.
+     */
+    public PhasedExecutor(final String name, final int nWorkers) {
+        if (nWorkers < 1) throw new IllegalArgumentException("nWorkers < 1");
+        this.dispatch = new Phaser(nWorkers + 1);
+        this.workers = new Thread[nWorkers];
+        for (int i = 0; i < nWorkers; i++) {
+            final int index = i;
+            workers[i] = new Thread(() -> work(index), name + "-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int numberOfWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * A phase of a job, see {@link PhasedExecutor}.
+     */
+    public static final class Phase {
+        private final IntConsumer shared;
+        private final IntConsumer local;
+
+        private Phase(final IntConsumer shared, final IntConsumer local) {
+            this.shared = shared;
+            this.local = local;
+        }
+
+        public static Phase of(final IntConsumer body) {
+            return new Phase(body, null);
+        }
+
+        /**
+         * @param shared Work the other workers depend on in the next phase.
+         * @param local  Work that overlaps the barrier, read only by the same
+         *               worker.
+         */
+        public static Phase fuzzy(final IntConsumer shared, final IntConsumer local) {
+            return new Phase(shared, local);
+        }
+    }
+
+    /**
+     * Run the phases on every worker with a barrier between them.
+     *
+     * @return How long each worker computed and waited in each phase.
+     */
+    public PhaseTimings run(final IntConsumer... phases) {
+        final Phase[] job = new Phase[phases.length];
+        for (int i = 0; i < phases.length; i++) job[i] = Phase.of(phases[i]);
+        return run(job);
+    }
+
+    public synchronized PhaseTimings run(final Phase... phases) {
+        if (closed) throw new IllegalStateException("The executor is closed");
+        final long start = System.nanoTime();
+        this.job = phases;
+        this.barrier = new Phaser(workers.length);
+        this.timings = new PhaseTimings(phases.length, workers.length);
+        failure.set(null);
+        dispatch.arriveAndAwaitAdvance();
+        dispatch.arriveAndAwaitAdvance();
+        final PhaseTimings output = timings;
+        output.elapsed = System.nanoTime() - start;
+        final Throwable throwable = failure.get();
+        if (throwable != null) throw new RuntimeException("A phase failed", throwable);
+        return output;
+    }
+
+    private void work(final int index) {
+        while (true) {
+            dispatch.arriveAndAwaitAdvance();
+            if (closed) return;
+            runJob(index, job, barrier, timings);
+            dispatch.arriveAndAwaitAdvance();
+        }
+    }
+
+    private void runJob(
+        final int index,
+        final Phase[] phases,
+        final Phaser barrier,
+        final PhaseTimings timings
+    ) {
+        try {
+            for (int p = 0; p < phases.length; p++) {
+                if (barrier.isTerminated()) return;
+                final long computeStart = System.nanoTime();
+                phases[p].shared.accept(index);
+                if (p == phases.length - 1) {
+                    if (phases[p].local != null) phases[p].local.accept(index);
+                    timings.compute[p][index] = System.nanoTime() - computeStart;
+                    return;
+                }
+                final int phase = barrier.arrive();
+                if (phases[p].local != null) phases[p].local.accept(index);
+                final long waitStart = System.nanoTime();
+                timings.compute[p][index] = waitStart - computeStart;
+                barrier.awaitAdvance(phase);
+                timings.wait[p][index] = System.nanoTime() - waitStart;
+            }
+        } catch (Throwable throwable) {
+            failure.compareAndSet(null, throwable);
+            barrier.forceTermination();
+        }
+    }
+
+    /**
+     * Stop the workers once they finish the current job.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        dispatch.arriveAndAwaitAdvance();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds spent by each worker in each phase, computing and waiting
+     * at the barrier that ends the phase.
+     */
+    public static final class PhaseTimings {
+        public final long[][] compute;
+        public final long[][] wait;
+        public long elapsed;
+
+        public PhaseTimings(final int nPhases, final int nWorkers) {
+            this.compute = new long[nPhases][nWorkers];
+            this.wait = new long[nPhases][nWorkers];
+        }
+
+        /**
+         * @return The ratio between the slowest and the mean compute time of
+         *         the phase, 1 when the work is perfectly balanced.
+         */
+        public double imbalance(final int phase) {
+            long max = 0, sum = 0;
+            for (long time : compute[phase]) {
+                max = Math.max(max, time);
+                sum += time;
+            }
+            return sum == 0 ? 1 : max * compute[phase].length / (double) sum;
+        }
+
+        public void print() {
+            for (int p = 0; p < compute.length; p++) {
+                printer().printf("phase %d - imbalance %1.2f%n", p, imbalance(p));
+                for (int w = 0; w < compute[p].length; w++)
+                    printer().printf(
+                        "    worker %2d - compute: %4.4fms, wait: %4.4fms%n",
+                        w, compute[p][w] / 1e6, wait[p][w] / 1e6
+                    );
+            }
+            printer().printf("elapsed: %4.4fms%n", elapsed / 1e6);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Segmented sieve of Eratosthenes over the odd numbers. Each segment is a
+ * bit set of SEGMENT_BITS odd numbers (32KB, the size of a typical L1 data
+ * cache) crossed off with the primes up to the square root of the limit,
+ * which are computed once and shared by all segments and calls. Segments
+ * are independent, so they are sieved in parallel and every one costs
+ * about the same, unlike trial division whose cost grows with the number.
+ */
+public final class PrimeSieve {
+
+    /**
+     * Odd numbers per segment, one bit each.
+     */
+    public static final int SEGMENT_BITS = 1 << 18;
+
+    /**
+     * Numbers covered by one segment.
+     */
+    public static final long SEGMENT_SPAN = 2L * SEGMENT_BITS;
+
+    private static final ThreadLocal<long[]> SEGMENTS =
+        ThreadLocal.withInitial(() -> new long[SEGMENT_BITS / 64]);
+
+    private static int[] smallPrimes = {2};
+
+    private static int smallPrimesBound = 2;
+
+    private PrimeSieve() {
+    }
+
+    /**
+     * @return All the primes up to at least bound, memoized across calls.
+     */
+    public static synchronized int[] smallPrimes(final int bound) {
+        if (bound <= smallPrimesBound) return smallPrimes;
+        final int newBound = Math.max(bound, 2 * smallPrimesBound);
+        final boolean[] composite = new boolean[newBound + 1];
+        int count = 0;
+        final int[] primes = new int[newBound + 1];
+        for (int i = 2; i <= newBound; i++) {
+            if (composite[i]) continue;
+            primes[count++] = i;
+            for (long j = (long) i * i; j <= newBound; j += i) composite[(int) j] = true;
+        }
+        smallPrimes = Arrays.copyOf(primes, count);
+        smallPrimesBound = newBound;
+        return smallPrimes;
+    }
+
+    /**
+     * @return The number of primes in [1, limit).
+     */
+    public static long count(final ForkJoinPool forkJoinPool, final long limit) {
+        final int nSegments = numberOfSegments(limit);
+        final int[] primes = sievingPrimes(limit);
+        final long[] counts = new long[nSegments];
+        ParallelFor.forRangeChunked(forkJoinPool, nSegments, 1, (start, end) -> {
+            for (int s = start; s < end; s++) counts[s] = countSegment(sieveSegment(s, limit, primes), s, limit);
+        });
+        long output = limit > 2 ? 1 : 0;
+        for (long c : counts) output += c;
+        return output;
+    }
+
+    public static long count(final long limit) {
+        return count(ForkJoinPool.commonPool(), limit);
+    }
+
+    /**
+     * @return The sum of 1 / p for the primes p in [1, limit), adding the
+     *         segments in order so the result does not depend on the pool.
+     */
+    public static double reciprocalSum(final ForkJoinPool forkJoinPool, final long limit) {
+        final int nSegments = numberOfSegments(limit);
+        final int[] primes = sievingPrimes(limit);
+        final double[] sums = new double[nSegments];
+        ParallelFor.forRangeChunked(forkJoinPool, nSegments, 1, (start, end) -> {
+            for (int s = start; s < end; s++) sums[s] = reciprocalSumOfSegment(sieveSegment(s, limit, primes), s, limit);
+        });
+        double output = limit > 2 ? 0.5 : 0;
+        for (double sum : sums) output += sum;
+        return output;
+    }
+
+    public static double reciprocalSum(final long limit) {
+        return reciprocalSum(ForkJoinPool.commonPool(), limit);
+    }
+
+    /**
+     * Same as {@link #reciprocalSum(ForkJoinPool, long)} on the calling
+     * thread only.
+     */
+    public static double sequentialReciprocalSum(final long limit) {
+        final int nSegments = numberOfSegments(limit);
+        final int[] primes = sievingPrimes(limit);
+        double output = limit > 2 ? 0.5 : 0;
+        for (int s = 0; s < nSegments; s++)
+            output += reciprocalSumOfSegment(sieveSegment(s, limit, primes), s, limit);
+        return output;
+    }
+
+    /**
+     * @return The sum of 1 / p for the odd primes p of the segments
+     *         [segmentStart, segmentEnd) below limit, on the calling thread,
+     *         for callers that distribute the segments themselves.
+     */
+    public static double reciprocalSumOfSegments(
+        final int segmentStart,
+        final int segmentEnd,
+        final long limit
+    ) {
+        final int[] primes = sievingPrimes(limit);
+        double output = 0;
+        for (int s = segmentStart; s < Math.min(segmentEnd, numberOfSegments(limit)); s++)
+            output += reciprocalSumOfSegment(sieveSegment(s, limit, primes), s, limit);
+        return output;
+    }
+
+    /**
+     * @return The primes in [1, limit) in increasing order. The stream is
+     *         sequential; call parallel() to sieve the segments in parallel.
+     */
+    public static LongStream primes(final long limit) {
+        final LongStream two = limit > 2 ? LongStream.of(2) : LongStream.empty();
+        return LongStream.concat(
+            two,
+            StreamSupport.longStream(new PrimeSpliterator(0, numberOfSegments(limit), limit), false)
+        );
+    }
+
+    public static IntStream intPrimes(final int limit) {
+        return primes(limit).mapToInt(p -> (int) p);
+    }
+
+    /**
+     * @return The number of segments that cover [1, limit).
+     */
+    public static int numberOfSegments(final long limit) {
+        if (limit <= 1) return 0;
+        return Math.toIntExact((limit - 1 + SEGMENT_SPAN - 1) / SEGMENT_SPAN);
+    }
+
+    private static int[] sievingPrimes(final long limit) {
+        return smallPrimes(Math.toIntExact((long) Math.sqrt((double) limit) + 1));
+    }
+
+    private static long segmentLow(final int segment) {
+        return 1 + segment * SEGMENT_SPAN;
+    }
+
+    private static int segmentBits(final int segment, final long limit) {
+        final long low = segmentLow(segment);
+        final long high = Math.min(low + SEGMENT_SPAN, limit);
+        return (int) ((high - low + 1) / 2);
+    }
+
+    /**
+     * Cross off the odd composites of a segment. Bit b stands for the
+     * number segmentLow + 2b and is set when that number is not prime.
+     *
+     * @return The calling thread's segment buffer.
+     */
+    private static long[] sieveSegment(final int segment, final long limit, final int[] primes) {
+        final long[] bits = SEGMENTS.get();
+        Arrays.fill(bits, 0);
+        final long low = segmentLow(segment);
+        final int nBits = segmentBits(segment, limit);
+        final long high = low + 2L * nBits;
+        if (segment == 0) bits[0] |= 1;
+        for (int k = 1; k < primes.length; k++) {
+            final long p = primes[k];
+            final long square = p * p;
+            if (square >= high) break;
+            long start = Math.max(square, (low + p - 1) / p * p);
+            if ((start & 1) == 0) start += p;
+            for (long b = (start - low) >> 1; b < nBits; b += p) bits[(int) (b >>> 6)] |= 1L << b;
+        }
+        return bits;
+    }
+
+    private static long countSegment(final long[] bits, final int segment, final long limit) {
+        final int nBits = segmentBits(segment, limit);
+        long output = 0;
+        final int fullWords = nBits >>> 6;
+        for (int w = 0; w < fullWords; w++) output += 64 - Long.bitCount(bits[w]);
+        final int tail = nBits & 63;
+        if (tail != 0) output += tail - Long.bitCount(bits[fullWords] & ((1L << tail) - 1));
+        return output;
+    }
+
+    private static double reciprocalSumOfSegment(final long[] bits, final int segment, final long limit) {
+        final long low = segmentLow(segment);
+        final int nBits = segmentBits(segment, limit);
+        double output = 0;
+        for (int w = 0; w << 6 < nBits; w++) {
+            long word = ~bits[w] & tailMask(w, nBits);
+            while (word != 0) {
+                output += 1.0 / (low + 2L * ((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return output;
+    }
+
+    private static void forEachPrime(
+        final long[] bits,
+        final long low,
+        final int nBits,
+        final LongConsumer action
+    ) {
+        for (int w = 0; w << 6 < nBits; w++) {
+            long word = ~bits[w] & tailMask(w, nBits);
+            while (word != 0) {
+                action.accept(low + 2L * ((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+    }
+
+    private static long tailMask(final int word, final int nBits) {
+        final int remaining = nBits - (word << 6);
+        return remaining >= 64 ? -1L : (1L << remaining) - 1;
+    }
+
+    /**
+     * Splits by whole segments and sieves a segment only when it is
+     * traversed.
+     */
+    private static final class PrimeSpliterator implements Spliterator.OfLong {
+
+        private int segment;
+        private final int segmentEnd;
+        private final long limit;
+        private long[] buffer = new long[0];
+        private int bufferIndex, bufferLength;
+
+        private PrimeSpliterator(final int segment, final int segmentEnd, final long limit) {
+            this.segment = segment;
+            this.segmentEnd = segmentEnd;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean tryAdvance(final LongConsumer action) {
+            while (bufferIndex == bufferLength) {
+                if (segment >= segmentEnd) return false;
+                fill(segment++);
+            }
+            action.accept(buffer[bufferIndex++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final LongConsumer action) {
+            while (bufferIndex < bufferLength) action.accept(buffer[bufferIndex++]);
+            final int[] primes = sievingPrimes(limit);
+            for (; segment < segmentEnd; segment++)
+                forEachPrime(
+                    sieveSegment(segment, limit, primes),
+                    segmentLow(segment),
+                    segmentBits(segment, limit),
+                    action
+                );
+        }
+
+        private void fill(final int segment) {
+            final long[] bits = sieveSegment(segment, limit, sievingPrimes(limit));
+            final int nBits = segmentBits(segment, limit);
+            final int count = (int) countSegment(bits, segment, limit);
+            if (buffer.length < count) buffer = new long[count];
+            final long low = segmentLow(segment);
+            final int[] index = {0};
+            forEachPrime(bits, low, nBits, p -> buffer[index[0]++] = p);
+            bufferIndex = 0;
+            bufferLength = count;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            if (bufferIndex < bufferLength) return null;
+            final int remaining = segmentEnd - segment;
+            if (remaining < 2) return null;
+            final int mid = segment + remaining / 2;
+            final PrimeSpliterator prefix = new PrimeSpliterator(segment, mid, limit);
+            segment = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (segmentEnd - segment) * SEGMENT_BITS / 8 + (bufferLength - bufferIndex);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+    }
+}
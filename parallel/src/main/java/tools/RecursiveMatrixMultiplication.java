@@ -0,0 +1,214 @@
+package tools;
+
+import java.util.concurrent.RecursiveAction;
+
+import static tools.MatrixTools.blockedMultiplyAdd;
+
+/**
+ * Adds A * B to C by splitting the largest of the three dimensions in
+ * halves until every dimension fits in a leaf, which is computed with the
+ * cache blocked kernel. Splitting the rows of A or the columns of B gives
+ * two independent halves of C; splitting the shared dimension computes
+ * the second half into a temporary matrix in parallel and adds it
+ * afterwards. The number of tasks is bounded by (n / leafSize)^3 instead
+ * of one task per cell.
+ * <p>
+ * Above strassenCutoff, square blocks with even sides are multiplied with
+ * one level of the Strassen-Winograd scheme: seven half-size products
+ * instead of eight, each recursing on its own.
+ * <p>
+ * The elementwise passes, the addition of the temporary matrix and the
+ * sums and combinations of Strassen-Winograd, halve their rows into tasks
+ * of at most leafSize^2 cells, so the span stays polylogarithmic.
+ */
+public class RecursiveMatrixMultiplication extends RecursiveAction {
+
+    public static final int DEFAULT_LEAF_SIZE = 128;
+
+    /**
+     * Strassen is disabled with Integer.MAX_VALUE.
+     */
+    public static final int NO_STRASSEN = Integer.MAX_VALUE;
+
+    private final DenseMatrix A, B, C;
+
+    private final int leafSize;
+
+    private final int strassenCutoff;
+
+    public RecursiveMatrixMultiplication(
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C,
+        final int leafSize,
+        final int strassenCutoff
+    ) {
+        if (A.width != B.height || C.height != A.height || C.width != B.width)
+            throw new RuntimeException("Inconsistent matrix dimensions");
+        if (leafSize < 1) throw new IllegalArgumentException("leafSize < 1");
+        this.A = A;
+        this.B = B;
+        this.C = C;
+        this.leafSize = leafSize;
+        this.strassenCutoff = Math.max(strassenCutoff, 2 * leafSize);
+    }
+
+    public RecursiveMatrixMultiplication(
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C
+    ) {
+        this(A, B, C, DEFAULT_LEAF_SIZE, NO_STRASSEN);
+    }
+
+    @Override
+    protected void compute() {
+        final int m = A.height, k = A.width, n = B.width;
+        if (m <= leafSize && k <= leafSize && n <= leafSize) {
+            blockedMultiplyAdd(A, B, C, 0, m);
+        } else if (m >= strassenCutoff && m == k && k == n && m % 2 == 0) {
+            strassenWinograd();
+        } else if (m >= k && m >= n) {
+            final int h = m / 2;
+            invokeAll(
+                subtask(A.view(0, 0, h, k), B, C.view(0, 0, h, n)),
+                subtask(A.view(h, 0, m - h, k), B, C.view(h, 0, m - h, n))
+            );
+        } else if (n >= k) {
+            final int h = n / 2;
+            invokeAll(
+                subtask(A, B.view(0, 0, k, h), C.view(0, 0, m, h)),
+                subtask(A, B.view(0, h, k, n - h), C.view(0, h, m, n - h))
+            );
+        } else {
+            final int h = k / 2;
+            final DenseMatrix temporary = DenseMatrix.zeros(m, n);
+            invokeAll(
+                subtask(A.view(0, 0, m, h), B.view(0, 0, h, n), C),
+                subtask(A.view(0, h, m, k - h), B.view(h, 0, k - h, n), temporary)
+            );
+            addTo(temporary, C);
+        }
+    }
+
+    private RecursiveMatrixMultiplication subtask(
+        final DenseMatrix A,
+        final DenseMatrix B,
+        final DenseMatrix C
+    ) {
+        return new RecursiveMatrixMultiplication(A, B, C, leafSize, strassenCutoff);
+    }
+
+    private void strassenWinograd() {
+        final int h = A.height / 2;
+        final DenseMatrix A11 = A.view(0, 0, h, h), A12 = A.view(0, h, h, h);
+        final DenseMatrix A21 = A.view(h, 0, h, h), A22 = A.view(h, h, h, h);
+        final DenseMatrix B11 = B.view(0, 0, h, h), B12 = B.view(0, h, h, h);
+        final DenseMatrix B21 = B.view(h, 0, h, h), B22 = B.view(h, h, h, h);
+
+        final DenseMatrix S1 = DenseMatrix.zeros(h, h), S2 = DenseMatrix.zeros(h, h);
+        final DenseMatrix S3 = DenseMatrix.zeros(h, h), S4 = DenseMatrix.zeros(h, h);
+        final DenseMatrix T1 = DenseMatrix.zeros(h, h), T2 = DenseMatrix.zeros(h, h);
+        final DenseMatrix T3 = DenseMatrix.zeros(h, h), T4 = DenseMatrix.zeros(h, h);
+        // S1 = A21 + A22, S2 = S1 - A11, S3 = A11 - A21, S4 = A12 - S2
+        // T1 = B12 - B11, T2 = B22 - T1, T3 = B22 - B12, T4 = T2 - B21
+        forRows(h, h, (start, end) -> {
+            for (int i = start; i < end; i++)
+                for (int j = 0; j < h; j++) {
+                    final int index = S1.index(i, j);
+                    final double a11 = A11.get(i, j), b12 = B12.get(i, j), b22 = B22.get(i, j);
+                    final double s1 = A21.get(i, j) + A22.get(i, j), s2 = s1 - a11;
+                    final double t1 = b12 - B11.get(i, j), t2 = b22 - t1;
+                    S1.data[index] = s1;
+                    S2.data[index] = s2;
+                    S3.data[index] = a11 - A21.get(i, j);
+                    S4.data[index] = A12.get(i, j) - s2;
+                    T1.data[index] = t1;
+                    T2.data[index] = t2;
+                    T3.data[index] = b22 - b12;
+                    T4.data[index] = t2 - B21.get(i, j);
+                }
+        });
+
+        final DenseMatrix P1 = DenseMatrix.zeros(h, h), P2 = DenseMatrix.zeros(h, h);
+        final DenseMatrix P3 = DenseMatrix.zeros(h, h), P4 = DenseMatrix.zeros(h, h);
+        final DenseMatrix P5 = DenseMatrix.zeros(h, h), P6 = DenseMatrix.zeros(h, h);
+        final DenseMatrix P7 = DenseMatrix.zeros(h, h);
+        invokeAll(
+            subtask(A11, B11, P1),
+            subtask(A12, B21, P2),
+            subtask(S4, B22, P3),
+            subtask(A22, T4, P4),
+            subtask(S1, T1, P5),
+            subtask(S2, T2, P6),
+            subtask(S3, T3, P7)
+        );
+
+        // U2 = P1 + P6, U3 = U2 + P7, U4 = U2 + P5
+        // C11 += P1 + P2, C12 += U4 + P3, C21 += U3 - P4, C22 += U3 + P5
+        final DenseMatrix C11 = C.view(0, 0, h, h), C12 = C.view(0, h, h, h);
+        final DenseMatrix C21 = C.view(h, 0, h, h), C22 = C.view(h, h, h, h);
+        forRows(h, h, (start, end) -> {
+            for (int i = start; i < end; i++)
+                for (int j = 0; j < h; j++) {
+                    final double p1 = P1.get(i, j), p5 = P5.get(i, j);
+                    final double u2 = p1 + P6.get(i, j);
+                    final double u3 = u2 + P7.get(i, j);
+                    C11.data[C11.index(i, j)] += p1 + P2.get(i, j);
+                    C12.data[C12.index(i, j)] += u2 + p5 + P3.get(i, j);
+                    C21.data[C21.index(i, j)] += u3 - P4.get(i, j);
+                    C22.data[C22.index(i, j)] += u3 + p5;
+                }
+        });
+    }
+
+    private void addTo(final DenseMatrix X, final DenseMatrix Y) {
+        forRows(X.height, X.width, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                final int x = X.index(i, 0), y = Y.index(i, 0);
+                for (int j = 0; j < X.width; j++) Y.data[y + j] += X.data[x + j];
+            }
+        });
+    }
+
+    /**
+     * Run the body on the rows of a height x width block, halving them
+     * until a task has at most leafSize^2 cells.
+     */
+    private void forRows(final int height, final int width, final ParallelFor.RangeBody body) {
+        final int rowsPerTask = (int) Math.max(1, (long) leafSize * leafSize / Math.max(1, width));
+        new RowTask(0, height, rowsPerTask, body).invoke();
+    }
+
+    private static final class RowTask extends RecursiveAction {
+
+        private final int start, end, rowsPerTask;
+
+        private final ParallelFor.RangeBody body;
+
+        private RowTask(
+            final int start,
+            final int end,
+            final int rowsPerTask,
+            final ParallelFor.RangeBody body
+        ) {
+            this.start = start;
+            this.end = end;
+            this.rowsPerTask = rowsPerTask;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= rowsPerTask) {
+                body.apply(start, end);
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(
+                new RowTask(start, middle, rowsPerTask, body),
+                new RowTask(middle, end, rowsPerTask, body)
+            );
+        }
+    }
+}
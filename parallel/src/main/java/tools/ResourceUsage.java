@@ -0,0 +1,84 @@
+package tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the bytes allocated and the CPU time (user + system) of every
+ * live thread of the JVM, so that the work of pool threads is counted along
+ * with the calling thread. The difference of two snapshots only covers the
+ * threads alive at the second one: what a thread did before it terminated
+ * is lost, which does not matter for pools that outlive the measurement.
+ * <p>
+ * Allocation counters need the HotSpot extension
+ * {@link com.sun.management.ThreadMXBean}; without it, or when thread CPU
+ * time is disabled, the corresponding totals are -1.
+ */
+public final class ResourceUsage {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final com.sun.management.ThreadMXBean HOTSPOT_THREADS =
+        THREADS instanceof com.sun.management.ThreadMXBean ?
+            (com.sun.management.ThreadMXBean) THREADS : null;
+
+    private static final boolean ALLOCATION = HOTSPOT_THREADS != null &&
+        HOTSPOT_THREADS.isThreadAllocatedMemorySupported() &&
+        HOTSPOT_THREADS.isThreadAllocatedMemoryEnabled();
+
+    private static final boolean CPU_TIME = THREADS.isThreadCpuTimeSupported() &&
+        THREADS.isThreadCpuTimeEnabled();
+
+    private final Map<Long, Long> allocatedBytes = new HashMap<>();
+    private final Map<Long, Long> cpuTimes = new HashMap<>();
+
+    private ResourceUsage() {
+    }
+
+    public static ResourceUsage snapshot() {
+        final ResourceUsage output = new ResourceUsage();
+        final long[] ids = THREADS.getAllThreadIds();
+        final long[] bytes = ALLOCATION ? HOTSPOT_THREADS.getThreadAllocatedBytes(ids) : null;
+        final long[] times = CPU_TIME ? cpuTimes(ids) : null;
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes != null && bytes[i] >= 0) output.allocatedBytes.put(ids[i], bytes[i]);
+            if (times != null && times[i] >= 0) output.cpuTimes.put(ids[i], times[i]);
+        }
+        return output;
+    }
+
+    private static long[] cpuTimes(final long[] ids) {
+        if (HOTSPOT_THREADS != null) return HOTSPOT_THREADS.getThreadCpuTime(ids);
+        final long[] output = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) output[i] = THREADS.getThreadCpuTime(ids[i]);
+        return output;
+    }
+
+    /**
+     * @return The bytes allocated by all the threads since the earlier
+     *         snapshot, or -1 if allocations are not measured.
+     */
+    public long allocatedBytesSince(final ResourceUsage earlier) {
+        return ALLOCATION ? difference(allocatedBytes, earlier.allocatedBytes) : -1;
+    }
+
+    /**
+     * @return The CPU time in nanoseconds of all the threads since the
+     *         earlier snapshot, or -1 if thread CPU time is not measured.
+     */
+    public long cpuTimeSince(final ResourceUsage earlier) {
+        return CPU_TIME ? difference(cpuTimes, earlier.cpuTimes) : -1;
+    }
+
+    /**
+     * Threads started after the earlier snapshot count from zero.
+     */
+    private static long difference(final Map<Long, Long> later, final Map<Long, Long> earlier) {
+        long output = 0;
+        for (Map.Entry<Long, Long> entry : later.entrySet())
+            output += Math.max(0, entry.getValue() - earlier.getOrDefault(entry.getKey(), 0L));
+        return output;
+    }
+}
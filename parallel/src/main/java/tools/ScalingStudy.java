@@ -0,0 +1,258 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import tools.EvaluationTools.ResultTuple;
+
+import static tools.EvaluationTools.averageResults;
+import static tools.EvaluationTools.printer;
+
+/**
+ * Runs a workload over a grid of sizes and thread counts and derives, for
+ * every cell, the speedup S = T(sequential) / T(parallel), the parallel
+ * efficiency E = S / p and the Karp-Flatt experimentally determined serial
+ * fraction e = (1 / S - 1 / p) / (1 - 1 / p). For every size, Amdahl's law
+ * S(p) = 1 / (f + (1 - f) / p) and Gustafson's law S(p) = p - s (p - 1)
+ * are fitted to the measured speedups by least squares.
+ */
+public final class ScalingStudy {
+
+    /**
+     * A workload of the lectures, for example Lecture2_1::run, whose first
+     * result is the sequential run and whose second one is the parallel run.
+     */
+    @FunctionalInterface
+    public interface Workload<T> {
+        ResultTuple<T> run(int size, int nThreads);
+    }
+
+    public final String name;
+    public final List<Cell> cells;
+    public final List<Fit> fits;
+
+    private ScalingStudy(final String name, final List<Cell> cells, final List<Fit> fits) {
+        this.name = name;
+        this.cells = Collections.unmodifiableList(cells);
+        this.fits = Collections.unmodifiableList(fits);
+    }
+
+    /**
+     * @param name         The name of the workload in the reports.
+     * @param workload     The workload to evaluate.
+     * @param sizes        The sizes of the grid.
+     * @param threadCounts The thread counts of the grid.
+     * @param nIterations  Evaluations averaged per cell.
+     * @return The measured grid and the fitted laws.
+     */
+    public static <T> ScalingStudy sweep(
+        final String name,
+        final Workload<T> workload,
+        final int[] sizes,
+        final int[] threadCounts,
+        final int nIterations
+    ) {
+        final List<Cell> cells = new ArrayList<>();
+        final List<Fit> fits = new ArrayList<>();
+        for (int size : sizes) {
+            final List<Cell> row = new ArrayList<>();
+            for (int nThreads : threadCounts) {
+                final ResultTuple<T> result = averageResults(() -> workload.run(size, nThreads), nIterations);
+                row.add(new Cell(size, nThreads, result.A.time, result.B.time));
+            }
+            cells.addAll(row);
+            fits.add(Fit.of(size, row));
+        }
+        return new ScalingStudy(name, cells, fits);
+    }
+
+    /**
+     * @return The thread counts 1, 2, ..., maxThreads.
+     */
+    public static int[] threadCounts(final int maxThreads) {
+        final int[] output = new int[maxThreads];
+        for (int i = 0; i < maxThreads; i++) output[i] = i + 1;
+        return output;
+    }
+
+    public static int[] threadCounts() {
+        return threadCounts(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static final class Cell {
+        public final int size;
+        public final int nThreads;
+        public final long sequentialTime;
+        public final long parallelTime;
+        public final double speedup;
+        public final double efficiency;
+
+        /**
+         * The Karp-Flatt metric, NaN for one thread.
+         */
+        public final double karpFlatt;
+
+        public Cell(
+            final int size,
+            final int nThreads,
+            final long sequentialTime,
+            final long parallelTime
+        ) {
+            this.size = size;
+            this.nThreads = nThreads;
+            this.sequentialTime = sequentialTime;
+            this.parallelTime = parallelTime;
+            this.speedup = sequentialTime / (double) parallelTime;
+            this.efficiency = speedup / nThreads;
+            this.karpFlatt = nThreads == 1 ? Double.NaN :
+                (1 / speedup - 1.0 / nThreads) / (1 - 1.0 / nThreads);
+        }
+    }
+
+    public static final class Fit {
+        public final int size;
+
+        /**
+         * Serial fraction f of Amdahl's law, in [0, 1].
+         */
+        public final double amdahlSerialFraction;
+
+        /**
+         * Serial fraction s of Gustafson's law, in [0, 1].
+         */
+        public final double gustafsonSerialFraction;
+
+        public Fit(final int size, final double amdahlSerialFraction, final double gustafsonSerialFraction) {
+            this.size = size;
+            this.amdahlSerialFraction = amdahlSerialFraction;
+            this.gustafsonSerialFraction = gustafsonSerialFraction;
+        }
+
+        /**
+         * Least squares on the cells with more than one thread. Amdahl's
+         * law is linear in 1 / p once inverted: 1 / S - 1 / p = f (1 - 1 / p).
+         */
+        static Fit of(final int size, final List<Cell> cells) {
+            double amdahlNumerator = 0, amdahlDenominator = 0;
+            double gustafsonNumerator = 0, gustafsonDenominator = 0;
+            for (Cell cell : cells) {
+                if (cell.nThreads < 2) continue;
+                final double x = 1.0 / cell.nThreads;
+                amdahlNumerator += (1 / cell.speedup - x) * (1 - x);
+                amdahlDenominator += (1 - x) * (1 - x);
+                final double p = cell.nThreads;
+                gustafsonNumerator += (p - cell.speedup) * (p - 1);
+                gustafsonDenominator += (p - 1) * (p - 1);
+            }
+            return new Fit(
+                size,
+                amdahlDenominator == 0 ? Double.NaN : clamp(amdahlNumerator / amdahlDenominator),
+                gustafsonDenominator == 0 ? Double.NaN : clamp(gustafsonNumerator / gustafsonDenominator)
+            );
+        }
+
+        /**
+         * @return The speedup predicted by Amdahl's law for p threads.
+         */
+        public double amdahlSpeedup(final int p) {
+            return 1 / (amdahlSerialFraction + (1 - amdahlSerialFraction) / p);
+        }
+
+        public double gustafsonSpeedup(final int p) {
+            return p - gustafsonSerialFraction * (p - 1);
+        }
+
+        private static double clamp(final double value) {
+            return Math.max(0, Math.min(1, value));
+        }
+    }
+
+    public String toCsv() {
+        final StringBuilder output = new StringBuilder(
+            "workload,size,threads,sequential_ns,parallel_ns,speedup,efficiency,karp_flatt," +
+                "amdahl_serial_fraction,gustafson_serial_fraction\n"
+        );
+        for (Cell cell : cells) {
+            final Fit fit = fitOf(cell.size);
+            output.append(String.format(
+                Locale.US, "%s,%d,%d,%d,%d,%.6f,%.6f,%.6f,%.6f,%.6f%n",
+                name, cell.size, cell.nThreads, cell.sequentialTime, cell.parallelTime,
+                cell.speedup, cell.efficiency, cell.karpFlatt,
+                fit.amdahlSerialFraction, fit.gustafsonSerialFraction
+            ));
+        }
+        return output.toString();
+    }
+
+    public String toJson() {
+        final StringBuilder output = new StringBuilder();
+        output.append("{\"workload\":\"").append(name.replace("\"", "\\\"")).append("\",\"cells\":[");
+        for (int i = 0; i < cells.size(); i++) {
+            final Cell cell = cells.get(i);
+            if (i > 0) output.append(',');
+            output.append(String.format(
+                Locale.US,
+                "{\"size\":%d,\"threads\":%d,\"sequentialNanos\":%d,\"parallelNanos\":%d," +
+                    "\"speedup\":%s,\"efficiency\":%s,\"karpFlatt\":%s}",
+                cell.size, cell.nThreads, cell.sequentialTime, cell.parallelTime,
+                json(cell.speedup), json(cell.efficiency), json(cell.karpFlatt)
+            ));
+        }
+        output.append("],\"fits\":[");
+        for (int i = 0; i < fits.size(); i++) {
+            final Fit fit = fits.get(i);
+            if (i > 0) output.append(',');
+            output.append(String.format(
+                Locale.US,
+                "{\"size\":%d,\"amdahlSerialFraction\":%s,\"gustafsonSerialFraction\":%s}",
+                fit.size, json(fit.amdahlSerialFraction), json(fit.gustafsonSerialFraction)
+            ));
+        }
+        return output.append("]}").toString();
+    }
+
+    public void writeCsv(final Path file) {
+        write(file, toCsv());
+    }
+
+    public void writeJson(final Path file) {
+        write(file, toJson());
+    }
+
+    public void print() {
+        printer().println(name);
+        for (Cell cell : cells)
+            printer().printf(
+                "size %,13d - %3d threads - speedup %6.2f - efficiency %6.2f%% - Karp-Flatt %7.4f%n",
+                cell.size, cell.nThreads, cell.speedup, 100 * cell.efficiency, cell.karpFlatt
+            );
+        for (Fit fit : fits)
+            printer().printf(
+                "size %,13d - Amdahl serial fraction %.4f - Gustafson serial fraction %.4f%n",
+                fit.size, fit.amdahlSerialFraction, fit.gustafsonSerialFraction
+            );
+    }
+
+    private Fit fitOf(final int size) {
+        for (Fit fit : fits) if (fit.size == size) return fit;
+        throw new RuntimeException("No fit for size " + size);
+    }
+
+    private static String json(final double value) {
+        return Double.isFinite(value) ? String.format(Locale.US, "%.6f", value) : "null";
+    }
+
+    private static void write(final Path file, final String content) {
+        try {
+            Files.writeString(file, content);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package tools;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import static tools.EvaluationTools.getChunkEndExclusive;
+import static tools.EvaluationTools.getChunkStartInclusive;
+
+/**
+ * Single program, multiple data in one JVM: size threads, the ranks, run
+ * the same body and tell their work apart with {@link Rank#rank()}. Ranks
+ * share nothing but messages: every pair of ranks has a FIFO mailbox in
+ * each direction, and the collectives are built on the mailboxes in the
+ * style of MPI:
+ * <ul>
+ * <li>barrier: dissemination, log2(size) rounds of messages;</li>
+ * <li>broadcast and reduce: binomial trees, log2(size) steps;</li>
+ * <li>scatter and gather: the root sends or receives one chunk per rank;</li>
+ * <li>allreduce: reduce then broadcast for short arrays, and a ring
+ * reduce-scatter then allgather for arrays of at least RING_THRESHOLD
+ * elements per rank, which sends each element 2 (size - 1) / size times
+ * whatever the number of ranks.</li>
+ * </ul>
+ * All the ranks must call the same collectives in the same order. Sends
+ * never block; collectives copy what they send, point-to-point messages
+ * are handed over as they are.
+ */
+public final class Spmd {
+
+    /**
+     * The number of elements per rank from which allreduce goes around a
+     * ring instead of up and down a tree.
+     */
+    public static final int RING_THRESHOLD = 1 << 10;
+
+    private final int size;
+
+    /**
+     * mailboxes[destination][source], one for point-to-point messages and
+     * one for the collectives so that they never mix.
+     */
+    private final BlockingQueue<Object>[][] messages;
+    private final BlockingQueue<Object>[][] collectives;
+
+    private final Thread[] threads;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    @SuppressWarnings("unchecked")
+    private Spmd(final int size) {
+        this.size = size;
+        this.messages = new BlockingQueue[size][size];
+        this.collectives = new BlockingQueue[size][size];
+        for (int destination = 0; destination < size; destination++)
+            for (int source = 0; source < size; source++) {
+                messages[destination][source] = new LinkedBlockingQueue<>();
+                collectives[destination][source] = new LinkedBlockingQueue<>();
+            }
+        this.threads = new Thread[size];
+    }
+
+    /**
+     * Run the body on size ranks, each on its own thread, and wait for all
+     * of them. The first failure interrupts the other ranks, which may be
+     * waiting for a message that will never come, and is rethrown.
+     */
+    public static void run(final int size, final Consumer<Rank> body) {
+        if (size < 1) throw new IllegalArgumentException("size < 1");
+        final Spmd spmd = new Spmd(size);
+        for (int r = 0; r < size; r++) {
+            final Rank rank = spmd.new Rank(r);
+            spmd.threads[r] = new Thread(() -> {
+                try {
+                    body.accept(rank);
+                } catch (Throwable throwable) {
+                    if (spmd.failure.compareAndSet(null, throwable))
+                        for (Thread thread : spmd.threads) if (thread != Thread.currentThread()) thread.interrupt();
+                }
+            }, "spmd-rank-" + r);
+        }
+        for (Thread thread : spmd.threads) thread.start();
+        try {
+            for (Thread thread : spmd.threads) thread.join();
+        } catch (InterruptedException exc) {
+            for (Thread thread : spmd.threads) thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exc);
+        }
+        final Throwable throwable = spmd.failure.get();
+        if (throwable != null) throw new RuntimeException(throwable);
+    }
+
+    /**
+     * Accumulates values into accumulator[offset ..] element by element.
+     */
+    @FunctionalInterface
+    private interface Combiner<A> {
+        void combine(A accumulator, int offset, A values);
+    }
+
+    public final class Rank {
+        private final int rank;
+
+        private Rank(final int rank) {
+            this.rank = rank;
+        }
+
+        public int rank() {
+            return rank;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Put a message in the mailbox of the destination; the sender must
+         * not modify it afterwards.
+         */
+        public void send(final int destination, final Object message) {
+            messages[destination][rank].add(message);
+        }
+
+        /**
+         * @return The next message from the source, waiting for it.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T receive(final int source) {
+            return (T) take(messages[rank][source]);
+        }
+
+        public void barrier() {
+            for (int distance = 1; distance < size; distance <<= 1) {
+                collectives[(rank + distance) % size][rank].add(Boolean.TRUE);
+                take(collectives[rank][(rank - distance + size) % size]);
+            }
+        }
+
+        /**
+         * @param data The array to send on the root, ignored elsewhere.
+         * @return The array of the root: itself on the root, a copy elsewhere.
+         */
+        public double[] broadcast(final double[] data, final int root) {
+            return broadcast0(data, root);
+        }
+
+        public long[] broadcast(final long[] data, final int root) {
+            return broadcast0(data, root);
+        }
+
+        public double broadcast(final double value, final int root) {
+            return broadcast0(new double[]{value}, root)[0];
+        }
+
+        /**
+         * Split the array of the root in size chunks, as
+         * {@link EvaluationTools#getChunkStartInclusive} does.
+         *
+         * @return A copy of the chunk of this rank.
+         */
+        public double[] scatter(final double[] data, final int root) {
+            return scatter0(data, root);
+        }
+
+        public long[] scatter(final long[] data, final int root) {
+            return scatter0(data, root);
+        }
+
+        /**
+         * @return The chunks of all the ranks in rank order on the root, null
+         *         elsewhere.
+         */
+        public double[] gather(final double[] chunk, final int root) {
+            return gather0(chunk, root);
+        }
+
+        public long[] gather(final long[] chunk, final int root) {
+            return gather0(chunk, root);
+        }
+
+        /**
+         * Reduce the arrays of all the ranks element by element.
+         *
+         * @param operator Associative and commutative.
+         * @return The reduction on the root, null elsewhere; data is not
+         *         modified.
+         */
+        public double[] reduce(final double[] data, final DoubleBinaryOperator operator, final int root) {
+            return reduce0(data, combiner(operator), root);
+        }
+
+        public long[] reduce(final long[] data, final LongBinaryOperator operator, final int root) {
+            return reduce0(data, combiner(operator), root);
+        }
+
+        /**
+         * @return The element by element reduction of the arrays of all the
+         *         ranks, on every rank; data is not modified.
+         */
+        public double[] allreduce(final double[] data, final DoubleBinaryOperator operator) {
+            return allreduce0(data, combiner(operator));
+        }
+
+        public long[] allreduce(final long[] data, final LongBinaryOperator operator) {
+            return allreduce0(data, combiner(operator));
+        }
+
+        /**
+         * The allreduce of one value per rank, named apart from the long
+         * version so that an int argument with an implicitly typed lambda
+         * is not ambiguous.
+         */
+        public double allreduceDouble(final double value, final DoubleBinaryOperator operator) {
+            return allreduce(new double[]{value}, operator)[0];
+        }
+
+        public long allreduceLong(final long value, final LongBinaryOperator operator) {
+            return allreduce(new long[]{value}, operator)[0];
+        }
+
+        /**
+         * Binomial tree rooted at root: the rank at distance d from the root
+         * receives from d minus its lowest set bit, then sends to d plus
+         * every lower power of two.
+         */
+        @SuppressWarnings("unchecked")
+        private <A> A broadcast0(final A data, final int root) {
+            final int relative = (rank - root + size) % size;
+            A message = rank == root ? copyOf(data) : null;
+            int mask = 1;
+            while (mask < size) {
+                if ((relative & mask) != 0) {
+                    message = (A) take(collectives[rank][(relative - mask + root) % size]);
+                    break;
+                }
+                mask <<= 1;
+            }
+            for (mask >>= 1; mask > 0; mask >>= 1)
+                if (relative + mask < size) collectives[(relative + mask + root) % size][rank].add(message);
+            return rank == root ? data : copyOf(message);
+        }
+
+        /**
+         * Binomial tree towards the root: a rank adds the partial results
+         * of the ranks below it, lowest distance first, then hands its own
+         * over to its parent.
+         */
+        @SuppressWarnings("unchecked")
+        private <A> A reduce0(final A data, final Combiner<A> combiner, final int root) {
+            final int relative = (rank - root + size) % size;
+            final A accumulator = copyOf(data);
+            for (int mask = 1; mask < size; mask <<= 1) {
+                if ((relative & mask) != 0) {
+                    collectives[(relative - mask + root) % size][rank].add(accumulator);
+                    return null;
+                }
+                if ((relative | mask) < size)
+                    combiner.combine(accumulator, 0, (A) take(collectives[rank][((relative | mask) + root) % size]));
+            }
+            return accumulator;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <A> A allreduce0(final A data, final Combiner<A> combiner) {
+            final int length = Array.getLength(data);
+            if (size == 1 || length < RING_THRESHOLD * size) {
+                final A reduced = reduce0(data, combiner, 0);
+                return rank == 0 ? broadcast0(reduced, 0) : broadcast0(data, 0);
+            }
+            final A accumulator = copyOf(data);
+            final int right = (rank + 1) % size, left = (rank - 1 + size) % size;
+            for (int step = 0; step < size - 1; step++) {
+                final int chunk = (rank - step + size) % size;
+                collectives[right][rank].add(copyOfChunk(accumulator, chunk, length));
+                combiner.combine(
+                    accumulator,
+                    chunkStart((chunk - 1 + size) % size, length),
+                    (A) take(collectives[rank][left])
+                );
+            }
+            for (int step = 0; step < size - 1; step++) {
+                final int chunk = (rank + 1 - step + size) % size;
+                collectives[right][rank].add(copyOfChunk(accumulator, chunk, length));
+                final A values = (A) take(collectives[rank][left]);
+                System.arraycopy(values, 0, accumulator, chunkStart((chunk - 1 + size) % size, length), Array.getLength(values));
+            }
+            return accumulator;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <A> A scatter0(final A data, final int root) {
+            if (rank != root) return (A) take(collectives[rank][root]);
+            final int length = Array.getLength(data);
+            for (int r = 0; r < size; r++)
+                if (r != root) collectives[r][rank].add(copyOfChunk(data, r, length));
+            return copyOfChunk(data, rank, length);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <A> A gather0(final A chunk, final int root) {
+            if (rank != root) {
+                collectives[root][rank].add(copyOf(chunk));
+                return null;
+            }
+            final Object[] chunks = new Object[size];
+            int length = 0;
+            for (int r = 0; r < size; r++) {
+                chunks[r] = r == rank ? chunk : take(collectives[rank][r]);
+                length += Array.getLength(chunks[r]);
+            }
+            final A output = (A) Array.newInstance(chunk.getClass().getComponentType(), length);
+            int offset = 0;
+            for (Object part : chunks) {
+                System.arraycopy(part, 0, output, offset, Array.getLength(part));
+                offset += Array.getLength(part);
+            }
+            return output;
+        }
+
+        private int chunkStart(final int chunk, final int length) {
+            return Math.min(getChunkStartInclusive(chunk, size, length), length);
+        }
+
+        private <A> A copyOfChunk(final A data, final int chunk, final int length) {
+            final int start = chunkStart(chunk, length);
+            return copyOfRange(data, start, Math.max(start, getChunkEndExclusive(chunk, size, length)));
+        }
+    }
+
+    private static Combiner<double[]> combiner(final DoubleBinaryOperator operator) {
+        return (accumulator, offset, values) -> {
+            for (int i = 0; i < values.length; i++)
+                accumulator[offset + i] = operator.applyAsDouble(accumulator[offset + i], values[i]);
+        };
+    }
+
+    private static Combiner<long[]> combiner(final LongBinaryOperator operator) {
+        return (accumulator, offset, values) -> {
+            for (int i = 0; i < values.length; i++)
+                accumulator[offset + i] = operator.applyAsLong(accumulator[offset + i], values[i]);
+        };
+    }
+
+    private static <A> A copyOf(final A array) {
+        return copyOfRange(array, 0, Array.getLength(array));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> A copyOfRange(final A array, final int from, final int to) {
+        final A output = (A) Array.newInstance(array.getClass().getComponentType(), to - from);
+        System.arraycopy(array, from, output, 0, to - from);
+        return output;
+    }
+
+    private static Object take(final BlockingQueue<Object> mailbox) {
+        try {
+            return mailbox.take();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a message", exc);
+        }
+    }
+}
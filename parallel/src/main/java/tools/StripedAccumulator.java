@@ -0,0 +1,158 @@
+package tools;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * A sum that many threads update from hot loops: every stripe is a cell of
+ * its own, PADDING longs apart so that two cells never share a cache line,
+ * and a thread always updates the same cell, so that the updates of
+ * different threads do not contend as they do on one AtomicLong or lock.
+ * <p>
+ * {@link OfDouble#add(double)} picks the cell of the current thread, which
+ * makes the sum of doubles depend on the scheduling, as for DoubleAdder.
+ * {@link OfDouble#add(int, double)} takes the cell from the caller: when
+ * each slot is owned by one task, such as the index of a chunk, every
+ * cell adds the same values in the same order and {@link OfDouble#sum()}
+ * combines the cells in slot order, so the sum is the same on every run.
+ */
+public abstract class StripedAccumulator {
+
+    /**
+     * 128 bytes between two cells: adjacent-line prefetching loads cache
+     * lines in pairs, so cells 64 bytes apart would still interfere.
+     */
+    public static final int PADDING = 16;
+
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * The cell of stripe s is cells[(s + 1) * PADDING], so that the first
+     * one is padded from the array header as well.
+     */
+    final long[] cells;
+    private final int mask;
+
+    StripedAccumulator(final int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("stripes < 1");
+        final int rounded = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.mask = rounded - 1;
+        this.cells = new long[(rounded + 1) * PADDING];
+    }
+
+    /**
+     * Twice as many stripes as processors, so that threads seldom collide.
+     */
+    static int defaultStripes() {
+        return 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return The number of cells, the power of two at least as large as
+     *         the stripes asked for.
+     */
+    public int stripes() {
+        return mask + 1;
+    }
+
+    public void reset() {
+        for (int stripe = 0; stripe <= mask; stripe++) CELLS.setVolatile(cells, index(stripe), 0L);
+    }
+
+    /**
+     * Fibonacci hashing of the thread id: the workers of a pool have
+     * consecutive ids, which it spreads over the cells.
+     */
+    final int currentStripe() {
+        return (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & mask;
+    }
+
+    final int slot(final int slot) {
+        return Objects.checkIndex(slot, mask + 1);
+    }
+
+    static int index(final int stripe) {
+        return (stripe + 1) * PADDING;
+    }
+
+    final long cell(final int stripe) {
+        return (long) CELLS.getVolatile(cells, index(stripe));
+    }
+
+    public static final class OfDouble extends StripedAccumulator {
+
+        public OfDouble() {
+            this(defaultStripes());
+        }
+
+        public OfDouble(final int stripes) {
+            super(stripes);
+        }
+
+        public void add(final double value) {
+            addToStripe(currentStripe(), value);
+        }
+
+        /**
+         * @param slot The cell to update, in [0, stripes()).
+         */
+        public void add(final int slot, final double value) {
+            addToStripe(slot(slot), value);
+        }
+
+        private void addToStripe(final int stripe, final double value) {
+            final int index = index(stripe);
+            long expected = (long) CELLS.getVolatile(cells, index);
+            while (true) {
+                final long witness = (long) CELLS.compareAndExchange(
+                    cells, index, expected, Double.doubleToRawLongBits(Double.longBitsToDouble(expected) + value)
+                );
+                if (witness == expected) return;
+                expected = witness;
+            }
+        }
+
+        /**
+         * @return The sum of the cells in slot order; concurrent updates
+         *         may or may not be counted.
+         */
+        public double sum() {
+            double output = 0;
+            for (int stripe = 0; stripe < stripes(); stripe++) output += Double.longBitsToDouble(cell(stripe));
+            return output;
+        }
+    }
+
+    public static final class OfLong extends StripedAccumulator {
+
+        public OfLong() {
+            this(defaultStripes());
+        }
+
+        public OfLong(final int stripes) {
+            super(stripes);
+        }
+
+        public void add(final long value) {
+            CELLS.getAndAdd(cells, index(currentStripe()), value);
+        }
+
+        public void increment() {
+            add(1L);
+        }
+
+        /**
+         * @param slot The cell to update, in [0, stripes()).
+         */
+        public void add(final int slot, final long value) {
+            CELLS.getAndAdd(cells, index(slot(slot)), value);
+        }
+
+        public long sum() {
+            long output = 0;
+            for (int stripe = 0; stripe < stripes(); stripe++) output += cell(stripe);
+            return output;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package tools;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static tools.EvaluationTools.getChunkEndExclusive;
+import static tools.EvaluationTools.getChunkStartInclusive;
+
+/**
+ * A graph of tasks scheduled as CompletableFutures on an executor. Every
+ * node starts as soon as its dependencies complete, without any thread
+ * waiting for them, so the latency of the graph is its critical path.
+ * Parallel loops fan out as a binary tree of futures: the last chunk
+ * starts after O(log nChunks) hops instead of nChunks - 1 for a chain.
+ * <p>
+ * The first failure cancels the graph, as in a {@link TaskScope}: the
+ * nodes that have not started yet are skipped, the dependents of a failed
+ * or cancelled node complete exceptionally, and {@link #join} rethrows
+ * the failure. Bodies that are already running are not interrupted. The
+ * nodes created by {@link #anyOf} are alternatives: their failures only
+ * count once the join-any fails.
+ */
+public final class TaskGraph {
+
+    private final Executor executor;
+    private final List<Node<?>> nodes = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+
+    public TaskGraph(final Executor executor) {
+        this.executor = executor;
+    }
+
+    public static final class Node<T> {
+        public final String name;
+        private final CompletableFuture<T> future;
+        private final boolean alternative;
+
+        private Node(final String name, final CompletableFuture<T> future, final boolean alternative) {
+            this.name = name;
+            this.future = future;
+            this.alternative = alternative;
+        }
+
+        /**
+         * @return The result, waiting for it if needed; from the body of a
+         *         dependent node it is already there.
+         */
+        public T get() {
+            return future.join();
+        }
+
+        public CompletableFuture<T> future() {
+            return future;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+
+    /**
+     * Run the body once all the dependencies completed normally.
+     */
+    public Node<Void> run(final String name, final Runnable body, final Node<?>... dependencies) {
+        return supply(name, () -> {
+            body.run();
+            return null;
+        }, dependencies);
+    }
+
+    public <T> Node<T> supply(final String name, final Supplier<T> body, final Node<?>... dependencies) {
+        return supply(name, body, false, dependencies);
+    }
+
+    private <T> Node<T> supply(
+        final String name,
+        final Supplier<? extends T> body,
+        final boolean alternative,
+        final Node<?>... dependencies
+    ) {
+        final Supplier<T> task = () -> {
+            checkCancelled(name);
+            return body.get();
+        };
+        return add(name, dependencies.length == 0
+            ? CompletableFuture.supplyAsync(task, executor)
+            : after(dependencies).thenApplyAsync(ignored -> task.get(), executor),
+            alternative
+        );
+    }
+
+    /**
+     * A stage of a pipeline: apply the body to the result of the input.
+     */
+    public <A, T> Node<T> then(final String name, final Node<A> input, final Function<? super A, T> body) {
+        return add(name, input.future.thenApplyAsync(value -> {
+            checkCancelled(name);
+            return body.apply(value);
+        }, executor));
+    }
+
+    /**
+     * Split [0, nElements) in nChunks chunks, as {@link ParallelFor#forRange}
+     * does, and run the body once per chunk after the dependencies. A task
+     * submits the upper half of its chunks and keeps splitting the lower
+     * half, so the chunks are started by a binary tree of tasks.
+     */
+    public Node<Void> forRange(
+        final String name,
+        final int nElements,
+        final int nChunks,
+        final ParallelFor.RangeBody body,
+        final Node<?>... dependencies
+    ) {
+        if (nChunks < 1) throw new IllegalArgumentException("nChunks < 1");
+        final int chunks = Math.max(1, Math.min(nChunks, nElements));
+        return add(name, after(dependencies).thenComposeAsync(
+            ignored -> fanOut(name, 0, chunks, chunks, nElements, body),
+            executor
+        ));
+    }
+
+    private CompletableFuture<Void> fanOut(
+        final String name,
+        final int chunkStart,
+        int chunkEnd,
+        final int nChunks,
+        final int nElements,
+        final ParallelFor.RangeBody body
+    ) {
+        CompletableFuture<Void> output = CompletableFuture.completedFuture(null);
+        while (chunkEnd - chunkStart > 1) {
+            final int mid = (chunkStart + chunkEnd) >>> 1, end = chunkEnd;
+            final CompletableFuture<Void> upper = CompletableFuture.supplyAsync(
+                () -> fanOut(name, mid, end, nChunks, nElements, body),
+                executor
+            ).thenCompose(Function.identity());
+            output = output.thenCombine(upper, (a, b) -> null);
+            chunkEnd = mid;
+        }
+        checkCancelled(name);
+        final int start = getChunkStartInclusive(chunkStart, nChunks, nElements);
+        final int end = getChunkEndExclusive(chunkStart, nChunks, nElements);
+        if (start < end) body.apply(start, end);
+        return output;
+    }
+
+    /**
+     * Join-all: completes when all the nodes completed normally.
+     */
+    public Node<Void> allOf(final String name, final Node<?>... nodes) {
+        return add(name, after(nodes));
+    }
+
+    /**
+     * Join-any: run every alternative after the dependencies, each as a
+     * node of its own named after the join-any, and complete with the
+     * first result that completes normally; fail only if all of them fail.
+     * The other alternatives keep running; cancel the graph or the nodes
+     * if their results are not needed, as for a speculative copy of a slow
+     * task.
+     * <p>
+     * The failure of one alternative does not cancel the graph: only the
+     * failure of the join-any does. The alternatives are created here, so
+     * none of them can fail before it is known to be one.
+     */
+    public <T> Node<T> anyOf(
+        final String name,
+        final List<? extends Supplier<? extends T>> alternatives,
+        final Node<?>... dependencies
+    ) {
+        if (alternatives.isEmpty()) throw new IllegalArgumentException("No alternatives");
+        final CompletableFuture<T> output = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(alternatives.size());
+        for (int i = 0; i < alternatives.size(); i++)
+            this.<T>supply(name + " " + i, alternatives.get(i), true, dependencies).future
+                .whenComplete((value, throwable) -> {
+                    if (throwable == null) output.complete(value);
+                    else if (remaining.decrementAndGet() == 0) output.completeExceptionally(throwable);
+                });
+        return add(name, output, false);
+    }
+
+    @SafeVarargs
+    public final <T> Node<T> anyOf(final String name, final Supplier<? extends T>... alternatives) {
+        return anyOf(name, List.of(alternatives));
+    }
+
+    /**
+     * Cancel one node; its dependents complete exceptionally, the rest of
+     * the graph goes on and {@link #join} does not report it.
+     */
+    public void cancel(final Node<?> node) {
+        node.future.cancel(false);
+    }
+
+    /**
+     * Cancel every node that has not completed yet.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Node<?> node : nodes) node.future.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Wait for every node, then rethrow the first failure, or a
+     * CancellationException if the graph was cancelled.
+     */
+    public void join() {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[nodes.size()];
+        for (int i = 0; i < futures.length; i++) futures[i] = nodes.get(i).future;
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException | CancellationException exc) {
+            // reported below
+        }
+        final Throwable throwable = failure.get();
+        if (throwable != null) throw new RuntimeException(throwable);
+        if (cancelled) throw new CancellationException("Task graph cancelled");
+    }
+
+    private <T> Node<T> add(final String name, final CompletableFuture<T> future) {
+        return add(name, future, false);
+    }
+
+    private <T> Node<T> add(final String name, final CompletableFuture<T> future, final boolean alternative) {
+        final Node<T> node = new Node<>(name, future, alternative);
+        nodes.add(node);
+        future.whenComplete((value, throwable) -> {
+            if (throwable == null || node.alternative) return;
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+            if (!(cause instanceof CancellationException) && failure.compareAndSet(null, cause)) cancel();
+        });
+        if (cancelled) future.cancel(false);
+        return node;
+    }
+
+    private static CompletableFuture<Void> after(final Node<?>... dependencies) {
+        if (dependencies.length == 0) return CompletableFuture.completedFuture(null);
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) futures[i] = dependencies[i].future;
+        return CompletableFuture.allOf(futures);
+    }
+
+    private void checkCancelled(final String name) {
+        if (cancelled) throw new CancellationException(name + " cancelled");
+    }
+}
@@ -0,0 +1,107 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Structured concurrency in the style of StructuredTaskScope.ShutdownOnFailure:
+ * every subtask runs on a new thread of the factory, the owner waits for
+ * all of them in {@link #join}, the first failure interrupts the others,
+ * and no thread outlives the scope once it is closed. With a factory of
+ * virtual threads this is the structured scope of JDK 21; with platform
+ * threads it is thread per task.
+ * <p>
+ * Only the thread that opened the scope may fork, join and close it.
+ */
+public final class TaskScope implements AutoCloseable {
+
+    private final ThreadFactory threadFactory;
+    private final Thread owner = Thread.currentThread();
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private boolean joined;
+
+    public TaskScope(final ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    public static final class Subtask<T> {
+        private volatile T result;
+
+        /**
+         * @return The result of the subtask, after a successful {@link #join}.
+         */
+        public T get() {
+            return result;
+        }
+    }
+
+    public <T> Subtask<T> fork(final Callable<T> task) {
+        checkOwner();
+        final Subtask<T> subtask = new Subtask<>();
+        final Thread thread = threadFactory.newThread(() -> {
+            if (failure.get() != null) return;
+            try {
+                subtask.result = task.call();
+            } catch (Throwable throwable) {
+                if (failure.compareAndSet(null, throwable)) shutdown();
+            }
+        });
+        synchronized (threads) {
+            threads.add(thread);
+        }
+        joined = false;
+        thread.start();
+        return subtask;
+    }
+
+    /**
+     * Wait for all the subtasks, then rethrow the first failure.
+     */
+    public void join() {
+        checkOwner();
+        try {
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException exc) {
+            shutdown();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exc);
+        }
+        joined = true;
+        final Throwable throwable = failure.get();
+        if (throwable != null) throw new RuntimeException(throwable);
+    }
+
+    /**
+     * Interrupt the subtasks still running.
+     */
+    private void shutdown() {
+        synchronized (threads) {
+            for (Thread thread : threads) thread.interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        checkOwner();
+        if (joined) return;
+        shutdown();
+        boolean interrupted = false;
+        for (Thread thread : threads)
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException exc) {
+                    interrupted = true;
+                }
+            }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void checkOwner() {
+        if (Thread.currentThread() != owner) throw new IllegalStateException("Not the owner of the scope");
+    }
+}
@@ -0,0 +1,280 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A matrix stored in a file as square tiles of tileSize x tileSize
+ * doubles, row-major inside a tile and tile after tile in row-major order,
+ * after a header with its dimensions. Edge tiles are padded with zeroes,
+ * so every tile has the same size and offset arithmetic.
+ * <p>
+ * The file is mapped in segments of whole tiles of about 1GB, and a tile
+ * is a view of its segment: reading it costs no system call or copy, and
+ * the operating system pages the file in and out, so the matrix can be
+ * much larger than the memory. {@link #prefetch} asks for the pages of a
+ * tile ahead of its use.
+ * <p>
+ * {@link #close()} unmaps the segments right away, as
+ * {@link DoubleArray#close()} does, so the file can be deleted; it waits
+ * for the prefetches of the file first. The tiles must not be used by any
+ * thread afterwards.
+ */
+public final class TiledMatrixFile implements AutoCloseable {
+
+    private static final long MAGIC = 0x54494c45444d4154L;
+
+    private static final int HEADER_BYTES = 4 * Long.BYTES;
+
+    public static final int MAX_TILE_SIZE = 8192;
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    /**
+     * Threads that fault in the tiles to prefetch; they block on the disk,
+     * so they are kept apart from the compute pools.
+     */
+    private static final ExecutorService PREFETCHER = Executors.newFixedThreadPool(4, runnable -> {
+        final Thread thread = new Thread(runnable, "tile-prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public final Path file;
+    public final int height;
+    public final int width;
+    public final int tileSize;
+    public final int tileRows;
+    public final int tileColumns;
+
+    private final int tileBytes;
+    private final int tilesPerSegment;
+    private MappedByteBuffer[] segments;
+
+    private final Set<CompletableFuture<Void>> prefetches = ConcurrentHashMap.newKeySet();
+
+    private TiledMatrixFile(
+        final Path file,
+        final FileChannel channel,
+        final int height,
+        final int width,
+        final int tileSize
+    ) throws IOException {
+        if (height < 0 || width < 0) throw new IllegalArgumentException("Negative dimensions");
+        if (tileSize < 1 || tileSize > MAX_TILE_SIZE)
+            throw new IllegalArgumentException("tileSize must be in [1, " + MAX_TILE_SIZE + "]");
+        this.file = file;
+        this.height = height;
+        this.width = width;
+        this.tileSize = tileSize;
+        this.tileRows = (height + tileSize - 1) / tileSize;
+        this.tileColumns = (width + tileSize - 1) / tileSize;
+        this.tileBytes = tileSize * tileSize * Double.BYTES;
+        this.tilesPerSegment = (int) Math.max(1, SEGMENT_BYTES / tileBytes);
+        final long nTiles = (long) tileRows * tileColumns;
+        final MappedByteBuffer[] segments =
+            new MappedByteBuffer[Math.toIntExact((nTiles + tilesPerSegment - 1) / tilesPerSegment)];
+        for (int s = 0; s < segments.length; s++) {
+            final long tiles = Math.min(tilesPerSegment, nTiles - (long) s * tilesPerSegment);
+            segments[s] = channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                HEADER_BYTES + (long) s * tilesPerSegment * tileBytes,
+                tiles * tileBytes
+            );
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * Create or truncate a file for a zero matrix.
+     */
+    public static TiledMatrixFile create(
+        final Path file,
+        final int height,
+        final int width,
+        final int tileSize
+    ) {
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putLong(height).putLong(width).putLong(tileSize).flip();
+            while (header.hasRemaining()) channel.write(header);
+            return new TiledMatrixFile(file, channel, height, width, tileSize);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Map a file written by {@link #create}.
+     */
+    public static TiledMatrixFile open(final Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC)
+                throw new IllegalArgumentException(file + " is not a tiled matrix");
+            return new TiledMatrixFile(
+                file, channel,
+                Math.toIntExact(header.getLong()),
+                Math.toIntExact(header.getLong()),
+                Math.toIntExact(header.getLong())
+            );
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Create a file with the numbers from 1 to (width * height), as
+     * {@link MatrixTools#createRangeMatrix} does, filled tile by tile in
+     * parallel.
+     */
+    public static TiledMatrixFile createRange(
+        final ForkJoinPool forkJoinPool,
+        final Path file,
+        final int height,
+        final int width,
+        final int tileSize
+    ) {
+        final TiledMatrixFile output = create(file, height, width, tileSize);
+        ParallelFor.forRangeChunked(forkJoinPool, output.numberOfTiles(), 1, (start, end) -> {
+            for (int t = start; t < end; t++) {
+                final int ti = t / output.tileColumns, tj = t % output.tileColumns;
+                final DoubleBuffer tile = output.tile(ti, tj);
+                final int rows = Math.min(tileSize, height - ti * tileSize);
+                final int columns = Math.min(tileSize, width - tj * tileSize);
+                for (int r = 0; r < rows; r++) {
+                    final long i = (long) ti * tileSize + r;
+                    for (int c = 0; c < columns; c++)
+                        tile.put(r * tileSize + c, tj * tileSize + c + i * width + 1.0);
+                }
+            }
+        });
+        return output;
+    }
+
+    /**
+     * Copy a matrix of rows into a new file.
+     */
+    public static TiledMatrixFile of(final Path file, final double[][] matrix, final int tileSize) {
+        final int height = matrix.length;
+        final int width = height == 0 ? 0 : matrix[0].length;
+        final TiledMatrixFile output = create(file, height, width, tileSize);
+        for (int i = 0; i < height; i++) {
+            if (matrix[i].length != width) throw new IllegalArgumentException("Ragged matrix");
+            for (int j = 0; j < width; j++) output.set(i, j, matrix[i][j]);
+        }
+        return output;
+    }
+
+    public int numberOfTiles() {
+        return Math.multiplyExact(tileRows, tileColumns);
+    }
+
+    /**
+     * @return The tile (ti, tj) in place in the mapping, tileSize * tileSize
+     *         doubles with the element (r, c) of the tile at r * tileSize + c.
+     */
+    public DoubleBuffer tile(final int ti, final int tj) {
+        return tileBytes(ti, tj).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    private ByteBuffer tileBytes(final int ti, final int tj) {
+        if (ti < 0 || ti >= tileRows || tj < 0 || tj >= tileColumns)
+            throw new IndexOutOfBoundsException("Tile (" + ti + ", " + tj + ")");
+        final long t = (long) ti * tileColumns + tj;
+        final int offset = (int) (t % tilesPerSegment) * tileBytes;
+        return segments()[(int) (t / tilesPerSegment)].slice(offset, tileBytes);
+    }
+
+    private MappedByteBuffer[] segments() {
+        final MappedByteBuffer[] output = segments;
+        if (output == null) throw new IllegalStateException("TiledMatrixFile closed");
+        return output;
+    }
+
+    /**
+     * Fault in the pages of the tile (ti, tj) on a prefetch thread. The
+     * prefetch threads are shared by every file and their queue is not
+     * bounded, so callers should not ask for a tile before their previous
+     * prefetch completed.
+     */
+    public synchronized CompletableFuture<Void> prefetch(final int ti, final int tj) {
+        final ByteBuffer bytes = tileBytes(ti, tj);
+        final CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            if (bytes instanceof MappedByteBuffer) ((MappedByteBuffer) bytes).load();
+        }, PREFETCHER);
+        prefetches.add(future);
+        future.whenComplete((ignored, throwable) -> prefetches.remove(future));
+        return future;
+    }
+
+    public double get(final int i, final int j) {
+        checkIndex(i, j);
+        return tile(i / tileSize, j / tileSize).get((i % tileSize) * tileSize + j % tileSize);
+    }
+
+    public void set(final int i, final int j, final double value) {
+        checkIndex(i, j);
+        tile(i / tileSize, j / tileSize).put((i % tileSize) * tileSize + j % tileSize, value);
+    }
+
+    private void checkIndex(final int i, final int j) {
+        if (i < 0 || i >= height || j < 0 || j >= width) throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+    }
+
+    /**
+     * @return A copy of the matrix as an array of rows, for small matrices.
+     */
+    public double[][] toArray() {
+        final double[][] output = new double[height][width];
+        for (int i = 0; i < height; i++)
+            for (int j = 0; j < width; j++) output[i][j] = get(i, j);
+        return output;
+    }
+
+    /**
+     * Write the modified pages back to the file.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : segments()) segment.force();
+    }
+
+    /**
+     * Unmap the segments once the pending prefetches are done; the writes
+     * are kept in the file.
+     */
+    @Override
+    public void close() {
+        final MappedByteBuffer[] released;
+        synchronized (this) {
+            released = segments;
+            if (released == null) return;
+            segments = null;
+        }
+        CompletableFuture.allOf(prefetches.toArray(new CompletableFuture<?>[0]))
+            .handle((ignored, throwable) -> null)
+            .join();
+        DoubleArray.release(released);
+    }
+}
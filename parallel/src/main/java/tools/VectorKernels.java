@@ -0,0 +1,93 @@
+package tools;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the scalar loops of the lectures, written with the
+ * incubating Vector API. Each loop processes SPECIES.length() lanes per
+ * iteration and finishes the range with one masked iteration.
+ * <p>
+ * The JVM needs --add-modules jdk.incubator.vector to load this class.
+ */
+public final class VectorKernels {
+
+    public static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Vector version of {@link EvaluationTools#sequentialReciprocalArraySum}.
+     * Every lane keeps its own partial sum, so the rounding differs from the
+     * scalar loop.
+     */
+    public static double reciprocalArraySum(
+        final double[] inputs,
+        final int startIndexInclusive,
+        final int endIndexExclusive
+    ) {
+        final DoubleVector ones = DoubleVector.broadcast(SPECIES, 1.0);
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = startIndexInclusive;
+        final int upperBound = startIndexInclusive + SPECIES.loopBound(endIndexExclusive - startIndexInclusive);
+        for (; i < upperBound; i += SPECIES.length())
+            sums = sums.add(ones.div(DoubleVector.fromArray(SPECIES, inputs, i)));
+        if (i < endIndexExclusive) {
+            final VectorMask<Double> mask = SPECIES.indexInRange(i, endIndexExclusive);
+            sums = sums.add(ones.div(DoubleVector.fromArray(SPECIES, inputs, i, mask)), mask);
+        }
+        return sums.reduceLanes(VectorOperators.ADD);
+    }
+
+    /**
+     * Raise every element of the range to the given power in place.
+     */
+    public static void pow(
+        final double[] values,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final double power
+    ) {
+        int i = startIndexInclusive;
+        final int upperBound = startIndexInclusive + SPECIES.loopBound(endIndexExclusive - startIndexInclusive);
+        for (; i < upperBound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, values, i)
+                .lanewise(VectorOperators.POW, power)
+                .intoArray(values, i);
+        if (i < endIndexExclusive) {
+            final VectorMask<Double> mask = SPECIES.indexInRange(i, endIndexExclusive);
+            DoubleVector.fromArray(SPECIES, values, i, mask)
+                .lanewise(VectorOperators.POW, power)
+                .intoArray(values, i, mask);
+        }
+    }
+
+    /**
+     * Apply x = x * x / 2 repetitions times to every element of the range
+     * in place. The lanes do the same operations as the scalar loop, so the
+     * results are identical.
+     */
+    public static void repeatedSquareHalf(
+        final double[] values,
+        final int startIndexInclusive,
+        final int endIndexExclusive,
+        final int repetitions
+    ) {
+        int i = startIndexInclusive;
+        final int upperBound = startIndexInclusive + SPECIES.loopBound(endIndexExclusive - startIndexInclusive);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, values, i);
+            for (int k = 0; k < repetitions; k++) v = v.mul(v).div(2.0);
+            v.intoArray(values, i);
+        }
+        if (i < endIndexExclusive) {
+            final VectorMask<Double> mask = SPECIES.indexInRange(i, endIndexExclusive);
+            DoubleVector v = DoubleVector.fromArray(SPECIES, values, i, mask);
+            for (int k = 0; k < repetitions; k++) v = v.mul(v).div(2.0);
+            v.intoArray(values, i, mask);
+        }
+    }
+}
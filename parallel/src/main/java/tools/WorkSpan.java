@@ -0,0 +1,236 @@
+package tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import static tools.EvaluationTools.printer;
+
+/**
+ * Measures the work, the span and the ideal parallelism of a computation
+ * graph, as defined in "Computation Graphs, Work, Span": work is the CPU
+ * time of all the tasks, span is the CPU time along the longest chain of
+ * dependencies and work / span is the largest speedup any number of
+ * processors could reach.
+ * <p>
+ * Every task carries a {@link Node} whose span is the length of the
+ * longest path that ends at the point the task has reached. A task forked
+ * by its parent starts at the parent's span, and joining it raises the
+ * parent's span to the child's. CPU time is read at every event, and a
+ * task that runs nested inside another on the same thread (work stealing
+ * while joining) pauses the outer one, so each nanosecond is charged to a
+ * single task. Nodes outside {@link #invoke} or {@link #measure} are not
+ * tracked and only cost a thread-local lookup.
+ */
+public final class WorkSpan {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private static final ThreadLocal<ArrayDeque<Node>> RUNNING = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private WorkSpan() {
+    }
+
+    /**
+     * A task of the computation graph.
+     */
+    public interface Instrumented {
+        Node node();
+    }
+
+    public static final class Node {
+        private Tracker tracker;
+        private boolean spawned;
+        private long span;
+        private long last;
+    }
+
+    private static final class Tracker {
+        private final LongAdder work = new LongAdder();
+        private final LongAdder tasks = new LongAdder();
+    }
+
+    public static final class Result {
+        public final long work;
+        public final long span;
+        public final long tasks;
+
+        public Result(final long work, final long span, final long tasks) {
+            this.work = work;
+            this.span = span;
+            this.tasks = tasks;
+        }
+
+        /**
+         * @return work / span, the speedup with unlimited processors.
+         */
+        public double parallelism() {
+            return span == 0 ? 1 : work / (double) span;
+        }
+
+        public void print(final String title) {
+            printer().printf(
+                "%s - work: %4.4fms, span: %4.4fms, parallelism: %.2f, tasks: %,d, work per task: %4.4fus%n",
+                title, work / 1e6, span / 1e6, parallelism(), tasks, work / 1e3 / Math.max(1, tasks)
+            );
+        }
+    }
+
+    /**
+     * Invoke an instrumented task as the root of a measured computation.
+     */
+    public static Result invoke(final ForkJoinPool forkJoinPool, final InstrumentedRecursiveTask<?> root) {
+        return invoke(forkJoinPool, root, root.node());
+    }
+
+    public static Result invoke(final ForkJoinPool forkJoinPool, final InstrumentedRecursiveAction root) {
+        return invoke(forkJoinPool, root, root.node());
+    }
+
+    private static Result invoke(
+        final ForkJoinPool forkJoinPool,
+        final ForkJoinTask<?> root,
+        final Node node
+    ) {
+        final Tracker tracker = new Tracker();
+        node.tracker = tracker;
+        node.spawned = true;
+        node.span = 0;
+        forkJoinPool.invoke(root);
+        return new Result(tracker.work.sum(), node.span, tracker.tasks.sum());
+    }
+
+    /**
+     * Run the body on the calling thread as the root of a measured
+     * computation, for graphs built with {@link #runAsync}.
+     */
+    public static Result measure(final Runnable body) {
+        final Tracker tracker = new Tracker();
+        final Node node = new Node();
+        node.tracker = tracker;
+        node.spawned = true;
+        enter(node);
+        try {
+            body.run();
+        } finally {
+            exit(node);
+        }
+        return new Result(tracker.work.sum(), node.span, tracker.tasks.sum());
+    }
+
+    /**
+     * Mark the start of a task on the current thread. A task that was not
+     * spawned, because its compute method is called directly, continues the
+     * path of the task that calls it.
+     */
+    public static void enter(final Node node) {
+        final ArrayDeque<Node> running = RUNNING.get();
+        final Node caller = running.peek();
+        long now = -1;
+        if (caller != null && caller.tracker != null) {
+            now = cpuTime();
+            settle(caller, now);
+        }
+        if (!node.spawned) {
+            node.tracker = caller == null ? null : caller.tracker;
+            node.span = caller == null ? 0 : caller.span;
+        }
+        if (node.tracker != null) {
+            node.last = now < 0 ? cpuTime() : now;
+            node.tracker.tasks.increment();
+        }
+        running.push(node);
+    }
+
+    public static void exit(final Node node) {
+        final ArrayDeque<Node> running = RUNNING.get();
+        running.pop();
+        final Node caller = running.peek();
+        long now = -1;
+        if (node.tracker != null) {
+            now = cpuTime();
+            settle(node, now);
+        }
+        if (caller != null && caller.tracker != null) {
+            if (!node.spawned) caller.span = Math.max(caller.span, node.span);
+            caller.last = now < 0 ? cpuTime() : now;
+        }
+    }
+
+    /**
+     * Record that parent forks child at its current point.
+     */
+    public static void spawn(final Node parent, final Node child) {
+        child.spawned = true;
+        child.tracker = parent == null ? null : parent.tracker;
+        if (child.tracker == null) return;
+        settle(parent, cpuTime());
+        child.span = parent.span;
+    }
+
+    /**
+     * Record that parent has joined child.
+     */
+    public static void sync(final Node parent, final Node child) {
+        if (parent == null || parent.tracker == null) return;
+        settle(parent, cpuTime());
+        parent.span = Math.max(parent.span, child.span);
+    }
+
+    /**
+     * Start the body asynchronously as a child of the task running on the
+     * current thread, for future graphs such as parallelLoop.
+     */
+    public static Async runAsync(final Runnable body, final Executor executor) {
+        final Node child = new Node();
+        spawn(RUNNING.get().peek(), child);
+        return new Async(CompletableFuture.runAsync(() -> {
+            enter(child);
+            try {
+                body.run();
+            } finally {
+                exit(child);
+            }
+        }, executor), child);
+    }
+
+    public static Async runAsync(final Runnable body) {
+        return runAsync(body, ForkJoinPool.commonPool());
+    }
+
+    public static final class Async {
+        public final CompletableFuture<Void> future;
+        private final Node node;
+
+        private Async(final CompletableFuture<Void> future, final Node node) {
+            this.future = future;
+            this.node = node;
+        }
+
+        /**
+         * Wait for the body and join its path into the current task.
+         */
+        public void join() {
+            future.join();
+            sync(RUNNING.get().peek(), node);
+        }
+    }
+
+    private static void settle(final Node node, final long now) {
+        final long elapsed = now - node.last;
+        node.tracker.work.add(elapsed);
+        node.span += elapsed;
+        node.last = now;
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
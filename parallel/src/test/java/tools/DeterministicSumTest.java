@@ -0,0 +1,83 @@
+package tools;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DeterministicSumTest {
+
+    private static final int[] PARALLELISMS = {1, 2, 3, 8};
+
+    private static final int[] SIZES = {0, 1, DeterministicSum.BLOCK_SIZE, 5 * DeterministicSum.BLOCK_SIZE + 7, 1_000_003};
+
+    /**
+     * Values of very different magnitudes, whose sums round differently in
+     * any other order.
+     */
+    private static double[] randomDoubles(final int size) {
+        final Random random = new Random(size);
+        final double[] output = new double[size];
+        for (int i = 0; i < size; i++) output[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16));
+        return output;
+    }
+
+    @Test
+    void sumsAreBitIdenticalForAnyParallelism() {
+        for (boolean compensated : new boolean[]{false, true})
+            for (int size : SIZES) {
+                final double[] inputs = randomDoubles(size);
+                final long expected = Double.doubleToRawLongBits(
+                    DeterministicSum.sequentialSum(inputs, 0, size, x -> x, compensated)
+                );
+                for (int parallelism : PARALLELISMS) {
+                    final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+                    try {
+                        final double sum = DeterministicSum.sum(forkJoinPool, inputs, 0, size, x -> x, compensated);
+                        assertEquals(
+                            expected, Double.doubleToRawLongBits(sum),
+                            size + " elements on " + parallelism + " threads, compensated: " + compensated
+                        );
+                    } finally {
+                        forkJoinPool.shutdown();
+                    }
+                }
+            }
+    }
+
+    @Test
+    void reciprocalSumsMatchTheSequentialSum() {
+        final double[] inputs = EvaluationTools.createRangeArray(1_000_003);
+        final long expected = Double.doubleToRawLongBits(
+            DeterministicSum.sequentialSum(inputs, 0, inputs.length, x -> 1 / x, true)
+        );
+        for (int parallelism : PARALLELISMS) {
+            final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+            try {
+                assertEquals(
+                    expected,
+                    Double.doubleToRawLongBits(DeterministicSum.reciprocalSum(forkJoinPool, inputs, true)),
+                    parallelism + " threads"
+                );
+            } finally {
+                forkJoinPool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void goldenResultsCheckTheFirstResultAgainstTheReference() {
+        GoldenResults.clear();
+        assertThrows(RuntimeException.class, () -> GoldenResults.check("sum", 1, 1.0, () -> 2.0));
+        GoldenResults.clear();
+        GoldenResults.check("sum", 1, 2.0, () -> 2.0);
+        GoldenResults.check("sum", 1, 2.0, () -> {
+            throw new AssertionError("The reference runs once");
+        });
+        assertThrows(RuntimeException.class, () -> GoldenResults.check("sum", 1, Math.nextUp(2.0), () -> 2.0));
+        GoldenResults.clear();
+    }
+}
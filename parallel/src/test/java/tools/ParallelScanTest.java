@@ -0,0 +1,148 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelScanTest {
+
+    private static final int[] SIZES = {0, 1, 2, ParallelScan.MINIMUM_GRAIN, ParallelScan.MINIMUM_GRAIN + 1, 100_003};
+
+    private static final int[] CHUNK_COUNTS = {1, 2, 3, 7, 64, 1000};
+
+    private static ForkJoinPool forkJoinPool;
+
+    @BeforeAll
+    static void startPool() {
+        forkJoinPool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        forkJoinPool.shutdown();
+    }
+
+    private static int[] randomInts(final int size) {
+        return new Random(size).ints(size, -1000, 1000).toArray();
+    }
+
+    private static long[] randomLongs(final int size) {
+        return new Random(size).longs(size).toArray();
+    }
+
+    /**
+     * Small integers, whose sums are exact in any order.
+     */
+    private static double[] randomDoubles(final int size) {
+        return new Random(size).ints(size, -1000, 1000).asDoubleStream().toArray();
+    }
+
+    @Test
+    void intScansMatchTheSequentialScans() {
+        for (int size : SIZES)
+            for (int nChunks : CHUNK_COUNTS) {
+                final int[] inputs = randomInts(size);
+                final int[] expected = new int[size], actual = new int[size];
+                ParallelScan.sequentialInclusiveScan(inputs, expected, Integer::sum);
+                ParallelScan.inclusiveScan(forkJoinPool, inputs, actual, nChunks, Integer::sum);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+
+                ParallelScan.sequentialInclusiveScan(inputs, expected, Math::max);
+                ParallelScan.inclusiveScan(forkJoinPool, inputs, actual, nChunks, Math::max);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+
+                final int expectedTotal = ParallelScan.sequentialExclusiveScan(inputs, expected, 0, Integer::sum);
+                final int total = ParallelScan.exclusiveScan(forkJoinPool, inputs, actual, 0, nChunks, Integer::sum);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+                assertEquals(expectedTotal, total);
+            }
+    }
+
+    @Test
+    void longScansMatchTheSequentialScans() {
+        for (int size : SIZES)
+            for (int nChunks : CHUNK_COUNTS) {
+                final long[] inputs = randomLongs(size);
+                final long[] expected = new long[size], actual = new long[size];
+                ParallelScan.sequentialInclusiveScan(inputs, expected, Long::sum);
+                ParallelScan.inclusiveScan(forkJoinPool, inputs, actual, nChunks, Long::sum);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+
+                final long expectedTotal = ParallelScan.sequentialExclusiveScan(inputs, expected, 0, (a, b) -> a ^ b);
+                final long total = ParallelScan.exclusiveScan(forkJoinPool, inputs, actual, 0, nChunks, (a, b) -> a ^ b);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+                assertEquals(expectedTotal, total);
+            }
+    }
+
+    @Test
+    void doubleScansMatchTheSequentialScans() {
+        for (int size : SIZES)
+            for (int nChunks : CHUNK_COUNTS) {
+                final double[] inputs = randomDoubles(size);
+                final double[] expected = new double[size], actual = new double[size];
+                ParallelScan.sequentialInclusiveScan(inputs, expected, Double::sum);
+                ParallelScan.inclusiveScan(forkJoinPool, inputs, actual, nChunks, Double::sum);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+
+                final double expectedTotal = ParallelScan.sequentialExclusiveScan(inputs, expected, 1, Math::min);
+                final double total = ParallelScan.exclusiveScan(forkJoinPool, inputs, actual, 1, nChunks, Math::min);
+                assertArrayEquals(expected, actual, size + " elements in " + nChunks + " chunks");
+                assertEquals(expectedTotal, total);
+            }
+    }
+
+    @Test
+    void scansMatchArraysParallelPrefix() {
+        final double[] inputs = randomDoubles(100_003);
+        final double[] expected = inputs.clone(), actual = new double[inputs.length];
+        Arrays.parallelPrefix(expected, Double::sum);
+        ParallelScan.inclusiveScan(forkJoinPool, inputs, actual, 16, Double::sum);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Keeping the left operand is associative but not commutative, so chunks
+     * combined out of order would show.
+     */
+    @Test
+    void nonCommutativeOperatorsKeepTheOrder() {
+        final int[] inputs = randomInts(100_003);
+        final int[] outputs = new int[inputs.length];
+        ParallelScan.inclusiveScan(forkJoinPool, inputs, outputs, 64, (a, b) -> a);
+        for (int output : outputs) assertEquals(inputs[0], output);
+        ParallelScan.inclusiveScan(forkJoinPool, inputs, outputs, 64, (a, b) -> b);
+        assertArrayEquals(inputs, outputs);
+        assertEquals(-1, ParallelScan.exclusiveScan(forkJoinPool, inputs, outputs, -1, 64, (a, b) -> a));
+        for (int output : outputs) assertEquals(-1, output);
+    }
+
+    @Test
+    void scansInPlace() {
+        final long[] inputs = randomLongs(100_003);
+        final long[] expected = new long[inputs.length];
+        ParallelScan.sequentialExclusiveScan(inputs, expected, 0, Long::sum);
+        ParallelScan.exclusiveScan(forkJoinPool, inputs, inputs, 0, 7, Long::sum);
+        assertArrayEquals(expected, inputs);
+    }
+
+    @Test
+    void rejectsMismatchedArrays() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ParallelScan.inclusiveScan(forkJoinPool, new int[3], new int[2], 2, Integer::sum)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ParallelScan.inclusiveScan(forkJoinPool, new int[3], new int[3], 0, Integer::sum)
+        );
+    }
+}
@@ -0,0 +1,99 @@
+package tools;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import tools.TaskGraph.Node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskGraphTest {
+
+    private static ForkJoinPool forkJoinPool;
+
+    @BeforeAll
+    static void startPool() {
+        forkJoinPool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        forkJoinPool.shutdown();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException exc) {
+            throw new RuntimeException(exc);
+        }
+    }
+
+    @Test
+    void anyOfIgnoresAFailingInput() {
+        final TaskGraph graph = new TaskGraph(forkJoinPool);
+        final Node<Integer> any = graph.anyOf(
+            "any",
+            () -> {
+                throw new IllegalStateException("boom");
+            },
+            () -> 42
+        );
+
+        assertEquals(42, any.get());
+        graph.join();
+        assertFalse(graph.isCancelled());
+    }
+
+    @Test
+    void anyOfFailsWhenAllInputsFail() {
+        final TaskGraph graph = new TaskGraph(forkJoinPool);
+        final Node<Integer> any = graph.anyOf(
+            "any",
+            () -> {
+                throw new IllegalStateException("boom");
+            },
+            () -> {
+                throw new IllegalStateException("boom");
+            }
+        );
+        final AtomicBoolean dependentRan = new AtomicBoolean();
+        graph.run("dependent", () -> dependentRan.set(true), any);
+
+        final RuntimeException exc = assertThrows(RuntimeException.class, graph::join);
+        assertEquals("boom", exc.getCause().getMessage());
+        assertTrue(graph.isCancelled());
+        assertFalse(dependentRan.get());
+    }
+
+    @Test
+    void failureCancelsTheGraph() {
+        final TaskGraph graph = new TaskGraph(forkJoinPool);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean dependentRan = new AtomicBoolean(), laterRan = new AtomicBoolean();
+        final Node<Void> gate = graph.run("gate", () -> await(release));
+        final Node<Void> later = graph.run("later", () -> laterRan.set(true), gate);
+        final Node<Void> failure = graph.run("failure", () -> {
+            throw new IllegalStateException("boom");
+        });
+        graph.run("dependent", () -> dependentRan.set(true), failure);
+        try {
+            final RuntimeException exc = assertThrows(RuntimeException.class, graph::join);
+            assertEquals("boom", exc.getCause().getMessage());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(graph.isCancelled());
+        assertTrue(later.future().isCompletedExceptionally());
+        assertFalse(dependentRan.get());
+        assertFalse(laterRan.get());
+    }
+}